@@ -0,0 +1,72 @@
+package cat.nyaa.ecore;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * an economy core running on a stub server and an in-memory upstream economy, shared by the benchmarks.
+ */
+@State(Scope.Benchmark)
+public abstract class EconomyState {
+    static final double INITIAL_BALANCE = 1e12;
+
+    @Param({"INTERNAL", "ADDITIONAL"})
+    public ServiceFeePreference preference;
+
+    @Param({"true", "false"})
+    public boolean logging;
+
+    @Param({"internal", "external"})
+    public String vaultType;
+
+    protected StubServer server;
+    protected InMemoryEconomy economy;
+    protected EconomyCoreProvider provider;
+    protected UUID payer;
+    private Path dataFolder;
+
+    @Setup(Level.Trial)
+    public void setUpProvider() throws IOException {
+        server = StubServer.get();
+        economy = new InMemoryEconomy();
+        dataFolder = Files.createTempDirectory("ecore-benchmark");
+        var config = new Config();
+        config.vault.type = vaultType;
+        config.vault.externalPlayerVaultUUID = UUID.randomUUID().toString();
+        config.misc.logTransactionToConsole = logging;
+        config.misc.logTradeToConsole = logging;
+        config.audit.fileEnabled = logging;
+        configure(config);
+        provider = new EconomyCoreProvider(config, economy, server.createPlugin(dataFolder.toFile()));
+        payer = UUID.randomUUID();
+        economy.setBalance(payer, INITIAL_BALANCE);
+    }
+
+    /**
+     * adjust the config before the provider is created.
+     */
+    protected void configure(Config config) {
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownProvider() throws IOException {
+        provider.onDisable();
+        server.cancelTasks();
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
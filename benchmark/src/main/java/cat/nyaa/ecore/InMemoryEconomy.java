@@ -0,0 +1,308 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * a Vault economy keeping every balance in memory, with optional latency and failure injection on balance changes.
+ * name based and bank methods are not supported.
+ */
+@SuppressWarnings("deprecation")
+public class InMemoryEconomy implements Economy {
+    private static final EconomyResponse NOT_IMPLEMENTED = new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "not implemented");
+
+    private final ConcurrentHashMap<UUID, Account> accounts = new ConcurrentHashMap<>();
+    private volatile long latencyNanos = 0;
+    private volatile double failureRate = 0;
+
+    /**
+     * @param latencyMicros time every deposit and withdraw takes before it is applied
+     */
+    public void setLatencyMicros(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    /**
+     * @param failureRate probability in [0, 1] that a deposit or withdraw fails without touching the balance
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void setBalance(UUID uuid, double balance) {
+        account(uuid).balance = balance;
+    }
+
+    public double getBalance(UUID uuid) {
+        var account = accounts.get(uuid);
+        return account == null ? 0 : account.balance;
+    }
+
+    /**
+     * @return sum of all account balances
+     */
+    public double getTotal() {
+        double total = 0;
+        for (var account : accounts.values()) {
+            total += account.balance;
+        }
+        return total;
+    }
+
+    private Account account(UUID uuid) {
+        return accounts.computeIfAbsent(uuid, k -> new Account());
+    }
+
+    private EconomyResponse change(OfflinePlayer player, double amount) {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        if (!Double.isFinite(amount)) {
+            return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "invalid amount");
+        }
+        var account = account(player.getUniqueId());
+        if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+            return new EconomyResponse(0, account.balance, EconomyResponse.ResponseType.FAILURE, "injected failure");
+        }
+        synchronized (account) {
+            if (account.balance + amount < 0) {
+                return new EconomyResponse(0, account.balance, EconomyResponse.ResponseType.FAILURE, "insufficient funds");
+            }
+            account.balance += amount;
+            return new EconomyResponse(Math.abs(amount), account.balance, EconomyResponse.ResponseType.SUCCESS, null);
+        }
+    }
+
+    private static class Account {
+        volatile double balance;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "InMemoryEconomy";
+    }
+
+    @Override
+    public boolean hasBankSupport() {
+        return false;
+    }
+
+    @Override
+    public int fractionalDigits() {
+        return -1;
+    }
+
+    @Override
+    public String format(double amount) {
+        return String.valueOf(amount);
+    }
+
+    @Override
+    public String currencyNamePlural() {
+        return "coins";
+    }
+
+    @Override
+    public String currencyNameSingular() {
+        return "coin";
+    }
+
+    @Override
+    public boolean hasAccount(String playerName) {
+        return false;
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return accounts.containsKey(player.getUniqueId());
+    }
+
+    @Override
+    public boolean hasAccount(String playerName, String worldName) {
+        return false;
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return hasAccount(player);
+    }
+
+    @Override
+    public double getBalance(String playerName) {
+        return 0;
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        return getBalance(player.getUniqueId());
+    }
+
+    @Override
+    public double getBalance(String playerName, String world) {
+        return 0;
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return getBalance(player);
+    }
+
+    @Override
+    public boolean has(String playerName, double amount) {
+        return false;
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        return getBalance(player) >= amount;
+    }
+
+    @Override
+    public boolean has(String playerName, String worldName, double amount) {
+        return false;
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return has(player, amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        if (amount < 0) {
+            return new EconomyResponse(0, getBalance(player), EconomyResponse.ResponseType.FAILURE, "cannot withdraw negative amount");
+        }
+        return change(player, -amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return withdrawPlayer(player, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        if (amount < 0) {
+            return new EconomyResponse(0, getBalance(player), EconomyResponse.ResponseType.FAILURE, "cannot deposit negative amount");
+        }
+        return change(player, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return depositPlayer(player, amount);
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, String player) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse deleteBank(String name) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse bankBalance(String name) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, String playerName) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, String playerName) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+        return NOT_IMPLEMENTED;
+    }
+
+    @Override
+    public List<String> getBanks() {
+        return List.of();
+    }
+
+    @Override
+    public boolean createPlayerAccount(String playerName) {
+        return false;
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        return accounts.putIfAbsent(player.getUniqueId(), new Account()) == null;
+    }
+
+    @Override
+    public boolean createPlayerAccount(String playerName, String worldName) {
+        return false;
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return createPlayerAccount(player);
+    }
+}
@@ -0,0 +1,271 @@
+package cat.nyaa.ecore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * standalone load test driving an economy core with many concurrent players, no minecraft server needed.
+ * <p>every option is a <code>key=value</code> argument, see {@link #DEFAULTS}, e.g.
+ * <code>java -cp target/benchmarks.jar cat.nyaa.ecore.LoadTest players=10000 threads=16 seconds=60 failureRate=0.001</code>.
+ * exits with status 1 if money was created or destroyed.</p>
+ */
+public class LoadTest {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    private static final double MONEY_EPSILON = 0.01;
+
+    static {
+        DEFAULTS.put("players", "10000");
+        DEFAULTS.put("threads", "8");
+        DEFAULTS.put("seconds", "30");
+        DEFAULTS.put("zipf", "1.0");
+        DEFAULTS.put("tradeWeight", "60");
+        DEFAULTS.put("transferWeight", "30");
+        DEFAULTS.put("payoutWeight", "10");
+        DEFAULTS.put("payoutReceivers", "20");
+        DEFAULTS.put("initialBalance", "10000");
+        DEFAULTS.put("maxAmount", "100");
+        DEFAULTS.put("latencyMicros", "0");
+        DEFAULTS.put("failureRate", "0");
+        DEFAULTS.put("vault", "internal");
+        DEFAULTS.put("balanceCache", "false");
+        DEFAULTS.put("logging", "false");
+    }
+
+    enum Kind {
+        TRADE, TRANSFER, PAYOUT
+    }
+
+    private final Map<String, String> options;
+    private final UUID[] players;
+    private final ZipfSampler popularity;
+    private final Map<Kind, Histogram> latencies = new EnumMap<>(Kind.class);
+    private final Map<Kind, Map<TransactionStatus, LongAdder>> statuses = new EnumMap<>(Kind.class);
+    private final LongAdder exceptions = new LongAdder();
+    private final int[] weights;
+    private final int payoutReceivers;
+    private final double maxAmount;
+    private InMemoryEconomy economy;
+    private EconomyCoreProvider provider;
+
+    LoadTest(Map<String, String> options) {
+        this.options = options;
+        players = new UUID[intOption("players")];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = UUID.randomUUID();
+        }
+        popularity = new ZipfSampler(players.length, doubleOption("zipf"));
+        weights = new int[]{intOption("tradeWeight"), intOption("transferWeight"), intOption("payoutWeight")};
+        payoutReceivers = Math.min(intOption("payoutReceivers"), players.length - 1);
+        maxAmount = doubleOption("maxAmount");
+        for (var kind : Kind.values()) {
+            latencies.put(kind, new Histogram());
+            var counts = new EnumMap<TransactionStatus, LongAdder>(TransactionStatus.class);
+            for (var status : TransactionStatus.values()) {
+                counts.put(status, new LongAdder());
+            }
+            statuses.put(kind, counts);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = new LinkedHashMap<>(DEFAULTS);
+        for (var arg : args) {
+            var split = arg.indexOf('=');
+            if (split < 0 || !DEFAULTS.containsKey(arg.substring(0, split))) {
+                System.err.println("Unknown option: " + arg + ", expected one of " + DEFAULTS.keySet());
+                System.exit(2);
+            }
+            options.put(arg.substring(0, split), arg.substring(split + 1));
+        }
+        System.out.println("Options: " + options);
+        System.exit(new LoadTest(options).run() ? 0 : 1);
+    }
+
+    /**
+     * @return true if money was conserved
+     */
+    boolean run() throws IOException, InterruptedException {
+        var server = StubServer.get();
+        var dataFolder = Files.createTempDirectory("ecore-loadtest");
+        economy = new InMemoryEconomy();
+        var initialBalance = doubleOption("initialBalance");
+        for (var player : players) {
+            economy.setBalance(player, initialBalance);
+        }
+        var config = new Config();
+        config.vault.type = options.get("vault");
+        config.vault.externalPlayerVaultUUID = UUID.randomUUID().toString();
+        config.cache.balanceCacheEnabled = Boolean.parseBoolean(options.get("balanceCache"));
+        config.misc.logTransactionToConsole = Boolean.parseBoolean(options.get("logging"));
+        config.misc.logTradeToConsole = config.misc.logTransactionToConsole;
+        config.audit.fileEnabled = config.misc.logTransactionToConsole;
+        config.metrics.enabled = true;
+        config.metrics.fileIntervalInSeconds = 0;
+        provider = new EconomyCoreProvider(config, economy, server.createPlugin(dataFolder.toFile()));
+        var expectedTotal = total();
+        // injected latency and failures only apply to the measured phase
+        economy.setLatencyMicros(longOption("latencyMicros"));
+        economy.setFailureRate(doubleOption("failureRate"));
+
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(longOption("seconds"));
+        var workers = new ArrayList<Thread>();
+        for (int i = 0; i < intOption("threads"); i++) {
+            var worker = new Thread(() -> work(deadline), "LoadTest-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+        var start = System.nanoTime();
+        for (var worker : workers) {
+            worker.join();
+        }
+        var elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        economy.setLatencyMicros(0);
+        economy.setFailureRate(0);
+        var rollbacks = provider.getMetrics().getRollbacks();
+        provider.onDisable();
+        server.cancelTasks();
+        var conserved = report(elapsedSeconds, rollbacks, expectedTotal);
+        try (Stream<Path> files = Files.walk(dataFolder)) {
+            for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+        return conserved;
+    }
+
+    private void work(long deadline) {
+        var random = ThreadLocalRandom.current();
+        var totalWeight = Arrays.stream(weights).sum();
+        while (System.nanoTime() < deadline) {
+            var pick = random.nextInt(totalWeight);
+            var kind = pick < weights[0] ? Kind.TRADE : pick < weights[0] + weights[1] ? Kind.TRANSFER : Kind.PAYOUT;
+            var payer = popularity.sample(random);
+            var amount = Math.round(random.nextDouble(0.01, maxAmount) * 100) / 100.0;
+            var start = System.nanoTime();
+            try {
+                var result = switch (kind) {
+                    case TRADE -> provider.playerTrade(players[payer], players[other(random, payer)], amount);
+                    case TRANSFER -> provider.playerTransfer(players[payer], players[other(random, payer)], amount);
+                    case PAYOUT -> provider.playerTransferToMultiple(players[payer], receivers(random, payer), amount);
+                };
+                latencies.get(kind).record(System.nanoTime() - start);
+                statuses.get(kind).get(result.status()).increment();
+            } catch (RuntimeException e) {
+                exceptions.increment();
+            }
+        }
+    }
+
+    private int other(ThreadLocalRandom random, int payer) {
+        int receiver;
+        do {
+            receiver = popularity.sample(random);
+        } while (receiver == payer);
+        return receiver;
+    }
+
+    private List<UUID> receivers(ThreadLocalRandom random, int payer) {
+        var picked = new boolean[players.length];
+        picked[payer] = true;
+        var receivers = new ArrayList<UUID>(payoutReceivers);
+        while (receivers.size() < payoutReceivers) {
+            // popular accounts saturate quickly, fall back to uniform picks to keep this bounded
+            var receiver = receivers.size() < payoutReceivers / 2 ? popularity.sample(random) : random.nextInt(players.length);
+            if (!picked[receiver]) {
+                picked[receiver] = true;
+                receivers.add(players[receiver]);
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * @return all player balances plus the system vault
+     */
+    private double total() {
+        var total = 0.0;
+        for (var player : players) {
+            total += economy.getBalance(player);
+        }
+        return total + provider.getSystemBalance();
+    }
+
+    private boolean report(double elapsedSeconds, long rollbacks, double expectedTotal) {
+        long operations = 0;
+        System.out.printf("%-9s %10s %10s %10s %10s %10s  (latency in microseconds)%n", "kind", "count", "p50", "p99", "p999", "max");
+        for (var kind : Kind.values()) {
+            var histogram = latencies.get(kind);
+            operations += histogram.getCount();
+            System.out.printf("%-9s %10d %10.1f %10.1f %10.1f %10.1f%n", kind, histogram.getCount(),
+                    histogram.getValueAtQuantile(0.5) / 1e3, histogram.getValueAtQuantile(0.99) / 1e3,
+                    histogram.getValueAtQuantile(0.999) / 1e3, histogram.getMax() / 1e3);
+        }
+        for (var kind : Kind.values()) {
+            var counts = new StringBuilder();
+            statuses.get(kind).forEach((status, count) -> {
+                if (count.sum() > 0) {
+                    counts.append(' ').append(status).append('=').append(count.sum());
+                }
+            });
+            System.out.println(kind + ":" + counts);
+        }
+        System.out.printf("Throughput: %d operations in %.1fs, %.0f ops/s%n", operations, elapsedSeconds, operations / elapsedSeconds);
+        System.out.println("Rollbacks: " + rollbacks + ", exceptions: " + exceptions.sum());
+
+        var negativeAccounts = Arrays.stream(players).filter(player -> economy.getBalance(player) < -MONEY_EPSILON).count();
+        var actualTotal = total();
+        var drift = actualTotal - expectedTotal;
+        var conserved = Math.abs(drift) <= MONEY_EPSILON && negativeAccounts == 0;
+        System.out.printf("Money: expected %.4f, actual %.4f, drift %.4f, negative accounts %d -> %s%n",
+                expectedTotal, actualTotal, drift, negativeAccounts, conserved ? "OK" : "VIOLATION");
+        return conserved;
+    }
+
+    private int intOption(String key) {
+        return Integer.parseInt(options.get(key));
+    }
+
+    private long longOption(String key) {
+        return Long.parseLong(options.get(key));
+    }
+
+    private double doubleOption(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    /**
+     * samples ranks in [0, n) with probability proportional to 1 / (rank + 1)^exponent.
+     */
+    static class ZipfSampler {
+        private final double[] cumulative;
+
+        ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            var sum = 0.0;
+            for (int i = 0; i < n; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+        }
+
+        int sample(ThreadLocalRandom random) {
+            var target = random.nextDouble(cumulative[cumulative.length - 1]);
+            var index = Arrays.binarySearch(cumulative, target);
+            return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimpleServicesManager;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * a headless bukkit server, just enough to run an {@link EconomyCoreProvider} outside of minecraft.
+ * sync tasks run on a single server thread ticking every 50ms, async tasks on a small pool.
+ */
+public class StubServer {
+    private static final long MILLIS_PER_TICK = 50;
+    private static StubServer instance = null;
+
+    private final Logger logger = Logger.getLogger("StubServer");
+    private final ConcurrentHashMap<UUID, OfflinePlayer> players = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Future<?>> tasks = new ConcurrentHashMap<>();
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final ScheduledExecutorService serverThread;
+    private final ScheduledExecutorService asyncPool;
+    private final SimpleServicesManager servicesManager = new SimpleServicesManager();
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final PluginManager pluginManager;
+    private volatile Thread primaryThread = null;
+
+    private StubServer() {
+        serverThread = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "Server thread");
+            thread.setDaemon(true);
+            primaryThread = thread;
+            return thread;
+        });
+        var asyncThreads = new AtomicInteger();
+        asyncPool = Executors.newScheduledThreadPool(2, r -> {
+            var thread = new Thread(r, "Craft Scheduler Thread - " + asyncThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // console output would dominate any measurement, only warnings get through
+        logger.setUseParentHandlers(false);
+        var handler = new ConsoleHandler();
+        handler.setLevel(Level.WARNING);
+        logger.addHandler(handler);
+        server = proxy(Server.class, this::handleServer);
+        scheduler = proxy(BukkitScheduler.class, this::handleScheduler);
+        pluginManager = proxy(PluginManager.class, (method, args) -> defaultValue(method.getReturnType()));
+    }
+
+    /**
+     * @return the stub server, installed as the bukkit server on first use
+     */
+    public static synchronized StubServer get() {
+        if (instance == null) {
+            instance = new StubServer();
+            Bukkit.setServer(instance.server);
+        }
+        return instance;
+    }
+
+    /**
+     * create a plugin instance backed by this server.
+     *
+     * @param dataFolder plugin data folder, must exist
+     */
+    public JavaPlugin createPlugin(File dataFolder) {
+        var description = new PluginDescriptionFile("Ecore", "benchmark", StubPlugin.class.getName());
+        return new StubPlugin(new JavaPluginLoader(server), description, dataFolder, new File(dataFolder, "Ecore.jar"));
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * cancel every task scheduled so far.
+     */
+    public void cancelTasks() {
+        tasks.values().forEach(task -> task.cancel(false));
+        tasks.clear();
+    }
+
+    private Object handleServer(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "getLogger" -> logger;
+            case "getScheduler" -> scheduler;
+            case "getPluginManager" -> pluginManager;
+            case "getServicesManager" -> servicesManager;
+            case "getName" -> "StubServer";
+            case "getVersion", "getBukkitVersion" -> "stub";
+            case "isPrimaryThread" -> Thread.currentThread() == primaryThread;
+            case "getOfflinePlayers" -> players.values().toArray(OfflinePlayer[]::new);
+            case "getOfflinePlayer" -> args[0] instanceof UUID uuid ? players.computeIfAbsent(uuid, StubServer::offlinePlayer) : null;
+            default -> defaultValue(method.getReturnType());
+        };
+    }
+
+    private Object handleScheduler(Method method, Object[] args) {
+        var name = method.getName();
+        if (name.equals("cancelTasks")) {
+            cancelTasks();
+            return null;
+        }
+        if (name.equals("callSyncMethod")) {
+            return serverThread.submit((Callable<?>) args[1]);
+        }
+        if (!name.startsWith("runTask") || !(args[1] instanceof Runnable task)) {
+            return defaultValue(method.getReturnType());
+        }
+        var sync = !name.endsWith("Asynchronously");
+        var executor = sync ? serverThread : asyncPool;
+        var delay = args.length > 2 ? (long) args[2] * MILLIS_PER_TICK : 0;
+        var id = taskIds.incrementAndGet();
+        Future<?> future;
+        if (args.length > 3) {
+            future = executor.scheduleAtFixedRate(task, delay, Math.max(1, (long) args[3]) * MILLIS_PER_TICK, TimeUnit.MILLISECONDS);
+        } else {
+            future = executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+        }
+        tasks.put(id, future);
+        var owner = (Plugin) args[0];
+        return proxy(BukkitTask.class, (taskMethod, taskArgs) -> switch (taskMethod.getName()) {
+            case "getTaskId" -> id;
+            case "getOwner" -> owner;
+            case "isSync" -> sync;
+            case "isCancelled" -> future.isCancelled();
+            case "cancel" -> {
+                future.cancel(false);
+                tasks.remove(id);
+                yield null;
+            }
+            default -> defaultValue(taskMethod.getReturnType());
+        });
+    }
+
+    private static OfflinePlayer offlinePlayer(UUID uuid) {
+        var name = "player-" + uuid.toString().substring(0, 8);
+        return proxy(OfflinePlayer.class, (method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> uuid;
+            case "getName" -> name;
+            case "hasPlayedBefore" -> true;
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                };
+            }
+            return handler.handle(method, args == null ? new Object[0] : args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return (byte) 0;
+    }
+
+    static class StubPlugin extends JavaPlugin {
+        StubPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+            super(loader, description, dataFolder, file);
+        }
+    }
+}
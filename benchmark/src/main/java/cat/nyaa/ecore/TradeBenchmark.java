@@ -0,0 +1,46 @@
+package cat.nyaa.ecore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * a consumer buying from a single merchant through the trade overloads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TradeBenchmark extends EconomyState {
+    private UUID merchant;
+
+    @Setup(Level.Trial)
+    public void setUpMerchant() {
+        merchant = UUID.randomUUID();
+    }
+
+    @Benchmark
+    public TransactionResult playerTrade() {
+        return provider.playerTrade(payer, merchant, 1, preference);
+    }
+
+    @Benchmark
+    public TransactionResult playerTradeWithFeeBounds() {
+        return provider.playerTrade(payer, merchant, 1, 0.05, 0.01, 0.5, preference);
+    }
+
+    @Benchmark
+    public TransactionResult playerTradeInsufficientBalance() {
+        return provider.playerTrade(merchant, payer, INITIAL_BALANCE * 2, preference);
+    }
+}
@@ -0,0 +1,45 @@
+package cat.nyaa.ecore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * one payer transferring to a fixed set of receivers, the sequential and the batch settlement path depending on the receiver count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark extends EconomyState {
+    @Param({"1", "10", "1000"})
+    public int receivers;
+
+    private List<UUID> receiverList;
+
+    @Setup(Level.Trial)
+    public void setUpReceivers() {
+        receiverList = new ArrayList<>(receivers);
+        for (int i = 0; i < receivers; i++) {
+            receiverList.add(UUID.randomUUID());
+        }
+    }
+
+    @Benchmark
+    public TransactionResult playerTransferToMultiple() {
+        return provider.playerTransferToMultiple(payer, receiverList, 1, preference);
+    }
+}
@@ -0,0 +1,78 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.Economy;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of {@link OfflinePlayer} handles, remembering which of them are known to own an upstream account.
+ * <p>An account becomes known after a successful <code>hasAccount</code>/<code>createPlayerAccount</code> and is
+ * checked again after {@link #invalidate(UUID)}, so the common path costs no upstream call at all.</p>
+ */
+class AccountResolver {
+    private final Economy economy;
+    private final int maxEntries;
+    private final ConcurrentHashMap<UUID, Account> accounts = new ConcurrentHashMap<>();
+
+    private static final class Account {
+        final OfflinePlayer player;
+        volatile boolean known = false;
+
+        Account(OfflinePlayer player) {
+            this.player = player;
+        }
+    }
+
+    AccountResolver(Economy economy, int maxEntries) {
+        this.economy = economy;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * get the player handle of an account, creating the upstream account if it does not exist.
+     */
+    OfflinePlayer resolve(UUID vault) {
+        var account = accounts.get(vault);
+        if (account == null) {
+            if (accounts.size() >= maxEntries) {
+                evictOne();
+            }
+            account = accounts.computeIfAbsent(vault, uuid -> new Account(Bukkit.getOfflinePlayer(uuid)));
+        }
+        if (!account.known) {
+            try {
+                //if possible
+                if (economy.hasAccount(account.player) || economy.createPlayerAccount(account.player)) {
+                    account.known = true;
+                }
+            } catch (Exception ignored) {
+            }
+        }
+        return account.player;
+    }
+
+    /**
+     * forget that the account exists upstream, e.g. after an upstream call on it failed.
+     */
+    void invalidate(UUID vault) {
+        var account = accounts.get(vault);
+        if (account != null) {
+            account.known = false;
+        }
+    }
+
+    int size() {
+        return accounts.size();
+    }
+
+    private void evictOne() {
+        var iterator = accounts.keySet().iterator();
+        if (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package cat.nyaa.ecore;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous view of {@link EconomyCore}.
+ * <p>Implemented by {@link AsyncEconomyCoreProvider}, and registered as a service next to {@link EconomyCore}:</p>
+ * <pre>
+ *      AsyncEconomyCore asyncEconomyCore = Bukkit.getServicesManager().getRegistration(AsyncEconomyCore.class).getProvider();
+ *      asyncEconomyCore.playerTrade(consumer, merchant, price).thenAccept(result -&gt; { ... });
+ * </pre>
+ *
+ * <p>Operations are executed on ECore worker threads. Operations touching the same account are executed in the order
+ * they were submitted, while operations on unrelated accounts run concurrently. Futures complete on a worker thread,
+ * so switch back to the main thread (e.g. with the bukkit scheduler) before touching the world.</p>
+ *
+ * <p>The upstream economy plugin must tolerate being called off the main thread.
+ * Calls made through the synchronous {@link EconomyCore} are not ordered against the ones made here.</p>
+ */
+public interface AsyncEconomyCore {
+    /**
+     * @see EconomyCore#playerTransfer(UUID, UUID, double)
+     */
+    CompletableFuture<TransactionResult> playerTransfer(UUID fromVault, UUID toVault, double amount);
+
+    /**
+     * @see EconomyCore#playerTransferToMultiple(UUID, List, double)
+     */
+    CompletableFuture<TransactionResult> playerTransferToMultiple(UUID fromVault, List<UUID> toVault, double amount);
+
+    /**
+     * @see EconomyCore#playerTransferToMultiple(UUID, List, double, ServiceFeePreference)
+     */
+    CompletableFuture<TransactionResult> playerTransferToMultiple(UUID fromVault, List<UUID> toVault, double amount, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double, ServiceFeePreference)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double, double)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double, double, ServiceFeePreference)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double, double, double, double)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax);
+
+    /**
+     * @see EconomyCore#playerTrade(UUID, UUID, double, double, double, double, ServiceFeePreference)
+     */
+    CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * @see EconomyCore#playerTransfer(String, UUID, UUID, double)
+     */
+    CompletableFuture<TransactionResult> playerTransfer(String idempotencyKey, UUID fromVault, UUID toVault, double amount);
+
+    /**
+     * @see EconomyCore#playerTrade(String, UUID, UUID, double)
+     */
+    CompletableFuture<TransactionResult> playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price);
+
+    /**
+     * @see EconomyCore#playerTrade(String, UUID, UUID, double, double, double, double, ServiceFeePreference)
+     */
+    CompletableFuture<TransactionResult> playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * @see EconomyCore#playerTradeBatch(List)
+     */
+    CompletableFuture<List<TransactionResult>> playerTradeBatch(List<TradeRequest> trades);
+
+    /**
+     * @see EconomyCore#depositPlayer(UUID, double)
+     */
+    CompletableFuture<Boolean> depositPlayer(UUID vault, double amount);
+
+    /**
+     * @see EconomyCore#withdrawPlayer(UUID, double)
+     */
+    CompletableFuture<Boolean> withdrawPlayer(UUID vault, double amount);
+
+    /**
+     * @see EconomyCore#setPlayerBalance(UUID, double)
+     */
+    CompletableFuture<Boolean> setPlayerBalance(UUID vault, double amount);
+
+    /**
+     * @see EconomyCore#getPlayerBalance(UUID)
+     */
+    CompletableFuture<Double> getPlayerBalance(UUID vault);
+
+    /**
+     * @see EconomyCore#withdrawSystemVault(double)
+     */
+    CompletableFuture<Boolean> withdrawSystemVault(double amount);
+
+    /**
+     * @see EconomyCore#depositSystemVault(double)
+     */
+    CompletableFuture<Boolean> depositSystemVault(double amount);
+
+    /**
+     * @see EconomyCore#setSystemBalance(double)
+     */
+    CompletableFuture<Boolean> setSystemBalance(double amount);
+
+    /**
+     * @see EconomyCore#getSystemBalance()
+     */
+    CompletableFuture<Double> getSystemBalance();
+
+    /**
+     * @see EconomyCore#getAvailableBalance(UUID)
+     */
+    CompletableFuture<Double> getAvailableBalance(UUID vault);
+
+    /**
+     * @see EconomyCore#hold(UUID, double)
+     */
+    CompletableFuture<HoldId> hold(UUID vault, double amount);
+
+    /**
+     * @see EconomyCore#hold(UUID, double, long)
+     */
+    CompletableFuture<HoldId> hold(UUID vault, double amount, long durationMillis);
+
+    /**
+     * @see EconomyCore#capture(HoldId, UUID)
+     */
+    CompletableFuture<TransactionResult> capture(HoldId holdId, UUID merchant);
+
+    /**
+     * @see EconomyCore#capture(HoldId, UUID, double)
+     */
+    CompletableFuture<TransactionResult> capture(HoldId holdId, UUID merchant, double feeRate);
+
+    /**
+     * @see EconomyCore#release(HoldId)
+     */
+    CompletableFuture<Boolean> release(HoldId holdId);
+
+    /**
+     * @see EconomyCore#getReceipt(long)
+     */
+    CompletableFuture<Receipt> getReceipt(long receiptId);
+
+    /**
+     * @see EconomyCore#getReceipts(UUID, long, long, int, int)
+     */
+    CompletableFuture<List<Receipt>> getReceipts(UUID vault, long fromMillis, long toMillis, int offset, int limit);
+
+    /**
+     * @see EconomyCore#getTopBalances(int)
+     */
+    CompletableFuture<List<LeaderboardEntry>> getTopBalances(int limit);
+
+    /**
+     * @see EconomyCore#getBalanceRank(UUID)
+     */
+    CompletableFuture<Integer> getBalanceRank(UUID vault);
+
+    /**
+     * returns the synchronous economy core backing this instance.
+     */
+    EconomyCore getSyncCore();
+}
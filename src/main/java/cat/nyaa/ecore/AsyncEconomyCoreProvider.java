@@ -0,0 +1,216 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+public class AsyncEconomyCoreProvider implements AsyncEconomyCore {
+    /**
+     * ordering key of the system vault, which is never a real player UUID.
+     */
+    static final UUID SYSTEM_VAULT_KEY = new UUID(0, 0);
+
+    private final EconomyCore core;
+    private final KeyedSerialExecutor executor;
+    private final boolean limitsPlugins;
+
+    public AsyncEconomyCoreProvider(EconomyCore core, int workerThreads) {
+        this.core = core;
+        this.executor = new KeyedSerialExecutor(workerThreads);
+        this.limitsPlugins = core instanceof EconomyCoreProvider provider && provider.getPluginLimits() != null;
+    }
+
+    public void onDisable(long timeoutMillis) {
+        executor.shutdown(timeoutMillis);
+    }
+
+    private <T> CompletableFuture<T> submit(UUID key, Supplier<T> call) {
+        return submit(List.of(key), call);
+    }
+
+    /**
+     * queue a core call, charging it to the plugin calling this method rather than to the worker thread running it.
+     */
+    private <T> CompletableFuture<T> submit(Collection<UUID> keys, Supplier<T> call) {
+        var plugin = limitsPlugins ? CallingPlugin.find() : null;
+        return executor.submit(keys, plugin == null ? call : () -> CallingPlugin.callAs(plugin, call));
+    }
+
+    private static List<UUID> keysOf(UUID payer, List<UUID> receivers) {
+        var keys = new ArrayList<UUID>(receivers.size() + 1);
+        keys.add(payer);
+        keys.addAll(receivers);
+        return keys;
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTransfer(UUID fromVault, UUID toVault, double amount) {
+        return submit(List.of(fromVault, toVault), () -> core.playerTransfer(fromVault, toVault, amount));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTransferToMultiple(UUID fromVault, List<UUID> toVault, double amount) {
+        var receivers = List.copyOf(toVault);
+        return submit(keysOf(fromVault, receivers), () -> core.playerTransferToMultiple(fromVault, receivers, amount));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTransferToMultiple(UUID fromVault, List<UUID> toVault, double amount, ServiceFeePreference serviceFeePreference) {
+        var receivers = List.copyOf(toVault);
+        return submit(keysOf(fromVault, receivers), () -> core.playerTransferToMultiple(fromVault, receivers, amount, serviceFeePreference));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, ServiceFeePreference serviceFeePreference) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price, serviceFeePreference));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price, feeRate));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, ServiceFeePreference serviceFeePreference) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price, feeRate, serviceFeePreference));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price, feeRate, feeMin, feeMax));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(consumer, merchant, price, feeRate, feeMin, feeMax, serviceFeePreference));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTransfer(String idempotencyKey, UUID fromVault, UUID toVault, double amount) {
+        return submit(List.of(fromVault, toVault), () -> core.playerTransfer(idempotencyKey, fromVault, toVault, amount));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(idempotencyKey, consumer, merchant, price));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        return submit(List.of(consumer, merchant), () -> core.playerTrade(idempotencyKey, consumer, merchant, price, feeRate, feeMin, feeMax, serviceFeePreference));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> depositPlayer(UUID vault, double amount) {
+        return submit(vault, () -> core.depositPlayer(vault, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> withdrawPlayer(UUID vault, double amount) {
+        return submit(vault, () -> core.withdrawPlayer(vault, amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setPlayerBalance(UUID vault, double amount) {
+        return submit(vault, () -> core.setPlayerBalance(vault, amount));
+    }
+
+    @Override
+    public CompletableFuture<Double> getPlayerBalance(UUID vault) {
+        return submit(vault, () -> core.getPlayerBalance(vault));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> withdrawSystemVault(double amount) {
+        return submit(SYSTEM_VAULT_KEY, () -> core.withdrawSystemVault(amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> depositSystemVault(double amount) {
+        return submit(SYSTEM_VAULT_KEY, () -> core.depositSystemVault(amount));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> setSystemBalance(double amount) {
+        return submit(SYSTEM_VAULT_KEY, () -> core.setSystemBalance(amount));
+    }
+
+    @Override
+    public CompletableFuture<Double> getSystemBalance() {
+        return submit(SYSTEM_VAULT_KEY, core::getSystemBalance);
+    }
+
+    @Override
+    public CompletableFuture<List<TransactionResult>> playerTradeBatch(List<TradeRequest> trades) {
+        var batch = List.copyOf(trades);
+        var keys = new ArrayList<UUID>(batch.size() * 2);
+        for (var trade : batch) {
+            keys.add(trade.payer());
+            keys.add(trade.receiver());
+        }
+        return submit(keys, () -> core.playerTradeBatch(batch));
+    }
+
+    @Override
+    public CompletableFuture<Double> getAvailableBalance(UUID vault) {
+        return submit(vault, () -> core.getAvailableBalance(vault));
+    }
+
+    @Override
+    public CompletableFuture<HoldId> hold(UUID vault, double amount) {
+        return submit(vault, () -> core.hold(vault, amount));
+    }
+
+    @Override
+    public CompletableFuture<HoldId> hold(UUID vault, double amount, long durationMillis) {
+        return submit(vault, () -> core.hold(vault, amount, durationMillis));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> capture(HoldId holdId, UUID merchant) {
+        return submit(List.of(holdId.vault(), merchant), () -> core.capture(holdId, merchant));
+    }
+
+    @Override
+    public CompletableFuture<TransactionResult> capture(HoldId holdId, UUID merchant, double feeRate) {
+        return submit(List.of(holdId.vault(), merchant), () -> core.capture(holdId, merchant, feeRate));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> release(HoldId holdId) {
+        return submit(holdId.vault(), () -> core.release(holdId));
+    }
+
+    @Override
+    public CompletableFuture<Receipt> getReceipt(long receiptId) {
+        return submit(List.of(), () -> core.getReceipt(receiptId));
+    }
+
+    @Override
+    public CompletableFuture<List<Receipt>> getReceipts(UUID vault, long fromMillis, long toMillis, int offset, int limit) {
+        return submit(vault, () -> core.getReceipts(vault, fromMillis, toMillis, offset, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<LeaderboardEntry>> getTopBalances(int limit) {
+        return submit(List.of(), () -> core.getTopBalances(limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getBalanceRank(UUID vault) {
+        return submit(vault, () -> core.getBalanceRank(vault));
+    }
+
+    @Override
+    public EconomyCore getSyncCore() {
+        return core;
+    }
+}
@@ -0,0 +1,256 @@
+package cat.nyaa.ecore;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Asynchronous audit sink for transactions.
+ * <p>Callers only put an entry into a bounded lock-free {@link RingBuffer}; a background writer formats it, logs it
+ * to console if enabled for its channel, and appends it as a JSON line to a per-channel daily file, compressing
+ * the file of the previous day when the date rolls over. When the buffer is full, entries are either dropped and
+ * counted, or the caller waits for room, depending on the configured policy. The writer flushes the files whenever
+ * it has drained the buffer and then parks until an entry arrives.</p>
+ */
+class AuditLog implements Closeable {
+    enum Channel {
+        TRADE("trade", "(Trade) "),
+        TRANSFER("transfer", "(Transfer) ");
+
+        private final String fileName;
+        private final String consolePrefix;
+
+        Channel(String fileName, String consolePrefix) {
+            this.fileName = fileName;
+            this.consolePrefix = consolePrefix;
+        }
+    }
+
+    private record Entry(Channel channel, UUID payer, double amount, TransactionResult result, long timestamp) {
+    }
+
+    private static final class ChannelFile {
+        LocalDate date;
+        File file;
+        BufferedWriter writer;
+    }
+
+    private final File directory;
+    private final Logger logger;
+    private final Map<Channel, Boolean> console = new EnumMap<>(Channel.class);
+    private final boolean fileEnabled;
+    private final boolean blockWhenFull;
+    private final boolean compressRotated;
+    private final RingBuffer<Entry> buffer;
+    private final LongAdder dropped = new LongAdder();
+    private final Map<Channel, ChannelFile> files = new EnumMap<>(Channel.class);
+    private final Thread writer;
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+    private long droppedReported = 0;
+
+    AuditLog(File directory, boolean logTradeToConsole, boolean logTransferToConsole, boolean fileEnabled, boolean compressRotated, int bufferCapacity, String overflowPolicy, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        this.console.put(Channel.TRADE, logTradeToConsole);
+        this.console.put(Channel.TRANSFER, logTransferToConsole);
+        this.fileEnabled = fileEnabled;
+        this.compressRotated = compressRotated;
+        this.blockWhenFull = switch (overflowPolicy) {
+            case "drop" -> false;
+            case "block" -> true;
+            default -> throw new IllegalArgumentException("Unknown audit overflow policy: " + overflowPolicy);
+        };
+        this.buffer = new RingBuffer<>(bufferCapacity);
+        this.writer = new Thread(this::runWriter, "ECore-Audit");
+        this.writer.setDaemon(true);
+        if (isEnabled()) {
+            this.writer.start();
+        }
+    }
+
+    boolean isEnabled() {
+        return fileEnabled || console.containsValue(true);
+    }
+
+    void record(Channel channel, UUID payer, double amount, TransactionResult result) {
+        if (closed || !(fileEnabled || console.get(channel))) {
+            return;
+        }
+        var entry = new Entry(channel, payer, amount, result, System.currentTimeMillis());
+        while (!buffer.offer(entry)) {
+            if (!blockWhenFull || closed) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return number of entries dropped because the buffer was full
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void runWriter() {
+        var line = new StringBuilder(512);
+        while (true) {
+            var entry = buffer.poll();
+            if (entry == null) {
+                flushFiles();
+                reportDropped();
+                if (closed) {
+                    break;
+                }
+                // same handshake as the receipt dispatcher: record() unparks only once it sees the flag
+                parked = true;
+                if (buffer.size() == 0 && !closed) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            if (console.get(entry.channel())) {
+                logger.info(entry.channel().consolePrefix + entry.result());
+            }
+            if (fileEnabled) {
+                line.setLength(0);
+                appendJson(line, entry);
+                try {
+                    var writer = writerOf(entry.channel(), entry.timestamp());
+                    writer.append(line).append('\n');
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to write audit entry", e);
+                }
+            }
+        }
+        for (var channel : Channel.values()) {
+            closeFile(files.remove(channel), false);
+        }
+    }
+
+    private BufferedWriter writerOf(Channel channel, long timestamp) throws IOException {
+        var date = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+        var current = files.get(channel);
+        if (current != null && current.date.equals(date)) {
+            return current.writer;
+        }
+        closeFile(current, compressRotated);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create audit directory " + directory);
+        }
+        var channelFile = new ChannelFile();
+        channelFile.date = date;
+        channelFile.file = new File(directory, channel.fileName + "-" + date + ".jsonl");
+        channelFile.writer = Files.newBufferedWriter(channelFile.file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        files.put(channel, channelFile);
+        return channelFile.writer;
+    }
+
+    private void closeFile(ChannelFile channelFile, boolean compress) {
+        if (channelFile == null) {
+            return;
+        }
+        try {
+            channelFile.writer.close();
+            if (compress) {
+                var compressed = new File(channelFile.file.getPath() + ".gz");
+                try (var in = Files.newInputStream(channelFile.file.toPath());
+                     var out = new GZIPOutputStream(Files.newOutputStream(compressed.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                    in.transferTo(out);
+                }
+                Files.delete(channelFile.file.toPath());
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to rotate audit file " + channelFile.file.getName(), e);
+        }
+    }
+
+    private void flushFiles() {
+        for (var channelFile : files.values()) {
+            try {
+                channelFile.writer.flush();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to flush audit file " + channelFile.file.getName(), e);
+            }
+        }
+    }
+
+    private void reportDropped() {
+        var total = dropped.sum();
+        if (total > droppedReported) {
+            logger.warning("Audit buffer full, dropped " + (total - droppedReported) + " entries (" + total + " in total).");
+            droppedReported = total;
+        }
+    }
+
+    private static void appendJson(StringBuilder line, Entry entry) {
+        var result = entry.result();
+        line.append("{\"time\":").append(entry.timestamp())
+                .append(",\"channel\":\"").append(entry.channel().fileName)
+                .append("\",\"status\":\"").append(result.status())
+                .append("\",\"payer\":\"").append(entry.payer())
+                .append("\",\"amount\":").append(entry.amount());
+        var receipt = result.getReceipt();
+        if (receipt != null) {
+            line.append(",\"receipt\":{\"id\":\"").append(Long.toHexString(receipt.getId()))
+                    .append("\",\"receivers\":");
+            appendUUIDs(line, receipt.getReceiver());
+            line.append(",\"failedReceivers\":");
+            appendUUIDs(line, receipt.getFailedReceivers());
+            line.append(",\"arrival\":").append(receipt.getAmountArrivePerTransaction())
+                    .append(",\"fee\":").append(receipt.getFeePerTransaction())
+                    .append(",\"feeRate\":").append(receipt.getFeeRate())
+                    .append(",\"payerRemain\":").append(receipt.getPayerRemain())
+                    .append(",\"preference\":\"").append(receipt.getTaxPreference())
+                    .append("\"}");
+        }
+        line.append('}');
+    }
+
+    private static void appendUUIDs(StringBuilder line, List<UUID> uuids) {
+        line.append('[');
+        for (int i = 0; i < uuids.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append('"').append(uuids.get(i)).append('"');
+        }
+        line.append(']');
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (writer.isAlive()) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind cache of player balances in front of the upstream {@link Economy}.
+ * <p>Balances are loaded once, deposits and withdrawals are applied to a local pending delta, and
+ * {@link #flush()} pushes the net delta of every dirty account upstream with a single call per account.
+ * Entries are kept in access order; idle clean entries are dropped on flush and the eldest clean entry is
+ * dropped when the cache grows over its capacity.</p>
+ *
+ * <p>A delta the upstream rejects is retried on the next flushes. Once it has failed {@code maxFlushAttempts}
+ * times it is given up: the entry is resynced with the upstream balance and the unsettled delta is logged and
+ * counted, rather than letting the cached balance drift from upstream forever.</p>
+ */
+class BalanceCache {
+    private final Economy economy;
+    private final Function<UUID, OfflinePlayer> playerResolver;
+    private final Logger logger;
+    private final int maxEntries;
+    private final long idleEvictionNanos;
+    private final int maxFlushAttempts;
+    private final AtomicLong unsettled = new AtomicLong();
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static final class Entry {
+        double upstreamBalance;
+        double pendingDelta;
+        long lastAccessNanos;
+        int failedFlushes;
+
+        Entry(double upstreamBalance) {
+            this.upstreamBalance = upstreamBalance;
+        }
+
+        double balance() {
+            return upstreamBalance + pendingDelta;
+        }
+    }
+
+    private record PendingWrite(UUID vault, double delta, int failedFlushes) {
+    }
+
+    BalanceCache(Economy economy, Function<UUID, OfflinePlayer> playerResolver, Logger logger, int maxEntries, long idleEvictionNanos, int maxFlushAttempts) {
+        this.economy = economy;
+        this.playerResolver = playerResolver;
+        this.logger = logger;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.idleEvictionNanos = idleEvictionNanos;
+        this.maxFlushAttempts = Math.max(1, maxFlushAttempts);
+    }
+
+    double getBalance(UUID vault) {
+        var loaded = load(vault);
+        synchronized (this) {
+            return current(vault, loaded).balance();
+        }
+    }
+
+    boolean deposit(UUID vault, double amount) {
+        var loaded = load(vault);
+        synchronized (this) {
+            current(vault, loaded).pendingDelta += amount;
+            return true;
+        }
+    }
+
+    boolean withdraw(UUID vault, double amount) {
+        var loaded = load(vault);
+        synchronized (this) {
+            var entry = current(vault, loaded);
+            if (entry.balance() < amount) {
+                return false;
+            }
+            entry.pendingDelta -= amount;
+            return true;
+        }
+    }
+
+    /**
+     * push the pending delta of every dirty account upstream, then drop idle clean entries.
+     */
+    void flush() {
+        var writes = new ArrayList<PendingWrite>();
+        synchronized (this) {
+            var now = System.nanoTime();
+            var iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                var mapEntry = iterator.next();
+                var entry = mapEntry.getValue();
+                if (entry.pendingDelta != 0) {
+                    writes.add(new PendingWrite(mapEntry.getKey(), entry.pendingDelta, entry.failedFlushes));
+                    entry.upstreamBalance += entry.pendingDelta;
+                    entry.pendingDelta = 0;
+                } else if (now - entry.lastAccessNanos > idleEvictionNanos) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        for (var write : writes) {
+            var player = playerResolver.apply(write.vault());
+            EconomyResponse response;
+            try {
+                response = write.delta() > 0 ? economy.depositPlayer(player, write.delta()) : economy.withdrawPlayer(player, -write.delta());
+            } catch (Exception e) {
+                response = new EconomyResponse(write.delta(), 0, EconomyResponse.ResponseType.FAILURE, e.toString());
+            }
+            if (response.type == EconomyResponse.ResponseType.SUCCESS) {
+                synchronized (this) {
+                    var entry = entries.get(write.vault());
+                    if (entry != null) {
+                        // resync with upstream, which may also have been changed by other plugins
+                        entry.upstreamBalance = response.balance;
+                        entry.failedFlushes = 0;
+                    }
+                }
+                continue;
+            }
+
+            var failedFlushes = write.failedFlushes() + 1;
+            var giveUp = failedFlushes >= maxFlushAttempts;
+            // read upstream outside the lock, cached reads must not wait for a round trip
+            var upstreamBalance = economy.getBalance(player);
+            synchronized (this) {
+                var entry = entries.get(write.vault());
+                if (entry == null) {
+                    entry = insert(write.vault(), new Entry(upstreamBalance));
+                } else if (giveUp) {
+                    // keep what was cached since this flush, drop the delta upstream refused
+                    entry.upstreamBalance = upstreamBalance;
+                } else {
+                    entry.upstreamBalance -= write.delta();
+                }
+                if (giveUp) {
+                    entry.failedFlushes = 0;
+                } else {
+                    entry.pendingDelta += write.delta();
+                    entry.failedFlushes = failedFlushes;
+                }
+            }
+            if (giveUp) {
+                unsettled.incrementAndGet();
+                logger.severe("Gave up flushing cached balance delta " + write.delta() + " of " + write.vault() + " after " + failedFlushes + " attempts: "
+                        + response.errorMessage + ". The cached balance has been resynced with upstream, the delta is unsettled.");
+            } else {
+                logger.warning("Failed to flush cached balance delta " + write.delta() + " of " + write.vault() + ": " + response.errorMessage + ", will retry.");
+            }
+        }
+    }
+
+    /**
+     * flush everything and empty the cache.
+     */
+    void flushAll() {
+        flush();
+        synchronized (this) {
+            var dirty = entries.values().stream().filter(entry -> entry.pendingDelta != 0).count();
+            if (dirty > 0) {
+                logger.severe(dirty + " cached balances could not be flushed upstream.");
+            }
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return number of deltas given up after failing every flush attempt
+     */
+    long getUnsettled() {
+        return unsettled.get();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private Entry load(UUID vault) {
+        synchronized (this) {
+            var entry = touch(vault);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        var upstreamBalance = economy.getBalance(playerResolver.apply(vault));
+        synchronized (this) {
+            var entry = touch(vault);
+            return entry != null ? entry : insert(vault, new Entry(upstreamBalance));
+        }
+    }
+
+    private Entry current(UUID vault, Entry loaded) {
+        var entry = touch(vault);
+        return entry != null ? entry : insert(vault, loaded);
+    }
+
+    private Entry touch(UUID vault) {
+        var entry = entries.get(vault);
+        if (entry != null) {
+            entry.lastAccessNanos = System.nanoTime();
+        }
+        return entry;
+    }
+
+    private Entry insert(UUID vault, Entry entry) {
+        entry.lastAccessNanos = System.nanoTime();
+        entries.put(vault, entry);
+        if (entries.size() > maxEntries) {
+            // evict the least recently used clean entry, dirty ones stay until flushed
+            var iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                var eldest = iterator.next();
+                if (eldest != entry && eldest.pendingDelta == 0) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,34 @@
+package cat.nyaa.ecore;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A running or finished export of every balance, see {@link EconomyCore#exportBalances(File, ExportFormat)}.
+ * <p>With ECore's own in-memory ledger, the account balances are a snapshot of the whole ledger taken when the export
+ * starts. Otherwise balances are read a chunk at a time, so the export is not an atomic snapshot: every balance is
+ * exact at the moment it was read, some time between {@link #getStartMillis()} and the end of the export. Receipts
+ * made in that time range tell which transactions may be reflected on only one side.</p>
+ */
+public interface BalanceExport {
+    File getFile();
+
+    long getStartMillis();
+
+    /**
+     * @return accounts examined so far
+     */
+    int getProgress();
+
+    /**
+     * @return accounts to examine in total
+     */
+    int getTotal();
+
+    boolean isDone();
+
+    /**
+     * @return completes with the number of accounts written once the file is complete, or exceptionally if the export failed
+     */
+    CompletableFuture<Integer> getCompletion();
+}
@@ -0,0 +1,277 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes every balance to a file without stalling the server.
+ * <p>Balances of an economy that must be read on the main thread are read there into a fixed buffer, as many as fit
+ * in a time budget each tick, and an async task writes the buffer out. The main thread skips ticks while the previous
+ * chunk is still being written, so memory stays at one chunk however many accounts there are. Balances that are safe
+ * to read off the main thread are read and written by a single async task. The file is written next to its final
+ * name and moved in place once complete.</p>
+ */
+class BalanceExporter implements BalanceExport {
+    private static final int MAGIC = 0x45434558;
+    private static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 4096;
+
+    private final File file;
+    private final File tempFile;
+    private final ExportFormat format;
+    private final double systemBalance;
+    private final int total;
+    private final long startMillis = System.currentTimeMillis();
+    private final UUID[] chunkAccounts = new UUID[CHUNK_SIZE];
+    private final double[] chunkBalances = new double[CHUNK_SIZE];
+    private final CompletableFuture<Integer> completion = new CompletableFuture<>();
+    private DataOutputStream out;
+    private BukkitTask task;
+    private volatile int progress = 0;
+    private int count = 0;
+    private int written = 0;
+    private volatile boolean writing = false;
+
+    /**
+     * @param total accounts to examine
+     */
+    BalanceExporter(File file, ExportFormat format, double systemBalance, int total) {
+        this.file = file;
+        this.tempFile = new File(file.getPath() + ".tmp");
+        this.format = format;
+        this.systemBalance = systemBalance;
+        this.total = total;
+    }
+
+    /**
+     * read the balances on the main thread, at least one account and at most a chunk per tick, and write them out
+     * asynchronously.
+     *
+     * @param balanceOf reads the balance of an account on the main thread, NaN if it has none
+     */
+    void startOnMainThread(JavaPlugin plugin, OfflinePlayer[] players, ToDoubleFunction<OfflinePlayer> balanceOf, long tickBudgetNanos) {
+        var scheduler = plugin.getServer().getScheduler();
+        scheduler.runTaskAsynchronously(plugin, () -> {
+            if (open()) {
+                scheduler.runTask(plugin, () -> {
+                    if (!completion.isDone()) {
+                        task = scheduler.runTaskTimer(plugin, () -> readChunk(plugin, players, balanceOf, tickBudgetNanos), 0, 1);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * read and write the balances in a single async task.
+     *
+     * @param accounts hands every account to examine and its balance, NaN if it has none, to the given consumer
+     */
+    void startAsync(JavaPlugin plugin, Consumer<ObjDoubleConsumer<UUID>> accounts) {
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (!open()) {
+                return;
+            }
+            try {
+                accounts.accept((account, balance) -> {
+                    progress++;
+                    if (!Double.isNaN(balance)) {
+                        add(account, balance);
+                        if (count == CHUNK_SIZE) {
+                            try {
+                                writeChunk();
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }
+                });
+                writeChunk();
+                finish();
+            } catch (UncheckedIOException e) {
+                fail(e.getCause());
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        });
+    }
+
+    private boolean open() {
+        try {
+            var parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            OutputStream stream = new FileOutputStream(tempFile);
+            if (format == ExportFormat.BINARY) {
+                stream = new GZIPOutputStream(stream, 1 << 16);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            writeHeader();
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    private void readChunk(JavaPlugin plugin, OfflinePlayer[] players, ToDoubleFunction<OfflinePlayer> balanceOf, long tickBudgetNanos) {
+        if (writing) {
+            return;
+        }
+        if (completion.isDone()) {
+            task.cancel();
+            return;
+        }
+        var deadline = System.nanoTime() + tickBudgetNanos;
+        try {
+            while (count < CHUNK_SIZE && progress < players.length) {
+                var player = players[progress];
+                var balance = balanceOf.applyAsDouble(player);
+                progress++;
+                if (!Double.isNaN(balance)) {
+                    add(player.getUniqueId(), balance);
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            task.cancel();
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> fail(e));
+            return;
+        }
+        var last = progress == players.length;
+        if (last) {
+            task.cancel();
+        }
+        writing = true;
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                writeChunk();
+                if (last) {
+                    finish();
+                }
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                writing = false;
+            }
+        });
+    }
+
+    private void add(UUID account, double balance) {
+        chunkAccounts[count] = account;
+        chunkBalances[count] = balance;
+        count++;
+    }
+
+    private void writeHeader() throws IOException {
+        if (format == ExportFormat.BINARY) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(startMillis);
+            out.writeDouble(systemBalance);
+        } else {
+            out.write("account,balance\n".getBytes(StandardCharsets.US_ASCII));
+            writeCsvRow("system", systemBalance);
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (format == ExportFormat.BINARY) {
+            // a zero count marks the trailer
+            if (count > 0) {
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(chunkAccounts[i].getMostSignificantBits());
+                    out.writeLong(chunkAccounts[i].getLeastSignificantBits());
+                    out.writeDouble(chunkBalances[i]);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                writeCsvRow(chunkAccounts[i].toString(), chunkBalances[i]);
+            }
+        }
+        written += count;
+        count = 0;
+    }
+
+    private void writeCsvRow(String account, double balance) throws IOException {
+        out.write((account + ',' + balance + '\n').getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void finish() throws IOException {
+        if (format == ExportFormat.BINARY) {
+            out.writeInt(0);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(written);
+        }
+        out.close();
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        completion.complete(written);
+    }
+
+    private void fail(Exception e) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+        if (!tempFile.delete() && tempFile.exists()) {
+            e.addSuppressed(new IOException("Failed to delete " + tempFile));
+        }
+        completion.completeExceptionally(e);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    @Override
+    public int getProgress() {
+        return progress;
+    }
+
+    @Override
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    @Override
+    public CompletableFuture<Integer> getCompletion() {
+        return completion;
+    }
+}
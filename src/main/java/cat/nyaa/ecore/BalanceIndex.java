@@ -0,0 +1,234 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Order-statistic treap of account balances, highest balance first, backing the balance leaderboard.
+ * <p>Every node knows the size of its subtree, so the rank of an account and the first k entries are found in
+ * O(log n) and O(log n + k). Nodes are found by account through a hash map, and a balance change is a removal
+ * followed by an insertion. Ties are ordered by UUID so ranks are stable.</p>
+ *
+ * <p>Balance changes are only recorded in a concurrent map, latest balance per account, so that transactions
+ * never wait on the tree. They are applied to the tree by {@link #drain()}, which every read does first.</p>
+ */
+class BalanceIndex {
+    private static final class Node {
+        private final UUID vault;
+        private final double balance;
+        private final int priority;
+        private Node left = null;
+        private Node right = null;
+        private int size = 1;
+
+        private Node(UUID vault, double balance, int priority) {
+            this.vault = vault;
+            this.balance = balance;
+            this.priority = priority;
+        }
+    }
+
+    private final Map<UUID, Node> nodes = new HashMap<>();
+    private final ConcurrentHashMap<UUID, Double> pending = new ConcurrentHashMap<>();
+    private final SplittableRandom random = new SplittableRandom();
+    private Node root = null;
+    private double total = 0;
+    // results of split(), valid right after it returns
+    private Node splitLeft = null;
+    private Node splitRight = null;
+
+    /**
+     * set the balance of an account, adding it if absent, on the next {@link #drain()}.
+     */
+    void update(UUID vault, double balance) {
+        pending.put(vault, balance);
+    }
+
+    /**
+     * apply every pending balance change to the tree.
+     */
+    synchronized void drain() {
+        for (var change : pending.entrySet()) {
+            var vault = change.getKey();
+            var balance = change.getValue();
+            // a newer balance recorded meanwhile stays pending for the next drain
+            pending.remove(vault, balance);
+            apply(vault, balance);
+        }
+    }
+
+    private void apply(UUID vault, double balance) {
+        var existing = nodes.get(vault);
+        if (existing != null) {
+            if (existing.balance == balance) {
+                return;
+            }
+            root = remove(root, existing);
+            total -= existing.balance;
+        }
+        var node = new Node(vault, balance, random.nextInt());
+        nodes.put(vault, node);
+        root = insert(root, node);
+        total += balance;
+    }
+
+    /**
+     * add an account unless it is indexed already, whose balance is then at least as recent.
+     */
+    synchronized void seed(UUID vault, double balance) {
+        if (!nodes.containsKey(vault) && !pending.containsKey(vault)) {
+            apply(vault, balance);
+        }
+    }
+
+    synchronized int size() {
+        drain();
+        return nodes.size();
+    }
+
+    /**
+     * @return the sum of every indexed balance
+     */
+    synchronized double total() {
+        drain();
+        return total;
+    }
+
+    /**
+     * @return the 1-based rank of an account, 0 if it is not indexed
+     */
+    synchronized int rank(UUID vault) {
+        drain();
+        var node = nodes.get(vault);
+        if (node == null) {
+            return 0;
+        }
+        var rank = 0;
+        var current = root;
+        while (current != null) {
+            var comparison = compare(node, current);
+            if (comparison < 0) {
+                current = current.left;
+            } else {
+                rank += size(current.left) + 1;
+                if (comparison == 0) {
+                    return rank;
+                }
+                current = current.right;
+            }
+        }
+        throw new IllegalStateException("Indexed account " + vault + " is missing from the tree.");
+    }
+
+    /**
+     * @return up to <code>limit</code> accounts with the highest balances, highest first
+     */
+    synchronized List<LeaderboardEntry> top(int limit) {
+        drain();
+        var entries = new ArrayList<LeaderboardEntry>(Math.max(0, Math.min(limit, nodes.size())));
+        var path = new ArrayDeque<Node>();
+        var current = root;
+        while (entries.size() < limit && (current != null || !path.isEmpty())) {
+            while (current != null) {
+                path.push(current);
+                current = current.left;
+            }
+            current = path.pop();
+            entries.add(new LeaderboardEntry(current.vault, current.balance, entries.size() + 1));
+            current = current.right;
+        }
+        return entries;
+    }
+
+    private static int compare(Node a, Node b) {
+        var comparison = Double.compare(b.balance, a.balance);
+        return comparison != 0 ? comparison : a.vault.compareTo(b.vault);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void resize(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private Node insert(Node tree, Node node) {
+        if (tree == null) {
+            return node;
+        }
+        if (node.priority > tree.priority) {
+            split(tree, node);
+            node.left = splitLeft;
+            node.right = splitRight;
+            resize(node);
+            return node;
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+        resize(tree);
+        return tree;
+    }
+
+    private Node remove(Node tree, Node node) {
+        if (tree == node) {
+            return merge(tree.left, tree.right);
+        }
+        if (compare(node, tree) < 0) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+        resize(tree);
+        return tree;
+    }
+
+    /**
+     * split a tree into the nodes ordered before <code>key</code> and the rest.
+     */
+    private void split(Node tree, Node key) {
+        if (tree == null) {
+            splitLeft = null;
+            splitRight = null;
+        } else if (compare(tree, key) < 0) {
+            split(tree.right, key);
+            tree.right = splitLeft;
+            resize(tree);
+            splitLeft = tree;
+        } else {
+            split(tree.left, key);
+            tree.left = splitRight;
+            resize(tree);
+            splitRight = tree;
+        }
+    }
+
+    /**
+     * join two trees, every node of <code>left</code> being ordered before every node of <code>right</code>.
+     */
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            resize(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        resize(right);
+        return right;
+    }
+}
@@ -0,0 +1,66 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Finds the plugin whose code called into ecore, by walking the stack up to the first class loaded by another plugin.
+ * <p>The owning plugin of every class is looked up once and cached with the class. Work handed to another thread
+ * loses the plugin frames, so the plugin found where it was submitted is carried along with {@link #callAs}.</p>
+ */
+final class CallingPlugin {
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final ClassValue<String> PLUGIN_OF_CLASS = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            if (type.getClassLoader() == CallingPlugin.class.getClassLoader()) {
+                return null;
+            }
+            try {
+                return JavaPlugin.getProvidingPlugin(type).getName();
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // not loaded by a plugin, e.g. the server itself or the jdk
+                return null;
+            }
+        }
+    };
+
+    private static final ThreadLocal<String> SUBMITTED_BY = new ThreadLocal<>();
+
+    private CallingPlugin() {
+    }
+
+    /**
+     * @return the name of the calling plugin, null if ecore was not called from plugin code
+     */
+    static String find() {
+        var submitter = SUBMITTED_BY.get();
+        if (submitter != null) {
+            return submitter;
+        }
+        return STACK_WALKER.walk(frames -> frames
+                .map(frame -> PLUGIN_OF_CLASS.get(frame.getDeclaringClass()))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null));
+    }
+
+    /**
+     * run a task as if called by a plugin, which {@link #find()} then returns on this thread.
+     *
+     * @param plugin the plugin found where the task was submitted, null to find it on this thread
+     */
+    static <T> T callAs(String plugin, Supplier<T> task) {
+        if (plugin == null) {
+            return task.get();
+        }
+        SUBMITTED_BY.set(plugin);
+        try {
+            return task.get();
+        } finally {
+            SUBMITTED_BY.remove();
+        }
+    }
+}
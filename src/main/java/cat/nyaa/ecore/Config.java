@@ -4,12 +4,31 @@ public class Config {
     public SystemVault vault = new SystemVault();
     public ServiceFee serviceFee = new ServiceFee();
     public Misc misc = new Misc();
+    public Async async = new Async();
+    public Transaction transaction = new Transaction();
+    public Cache cache = new Cache();
+    public ReceiptStorage receipt = new ReceiptStorage();
+    public Audit audit = new Audit();
+    public Metrics metrics = new Metrics();
+    public Ledger ledger = new Ledger();
+    public Holds hold = new Holds();
+    public RateLimit rateLimit = new RateLimit();
+    public Scheduler scheduler = new Scheduler();
+    public Leaderboard leaderboard = new Leaderboard();
+    public Stats stats = new Stats();
+    public Jdbc jdbc = new Jdbc();
+    public Idempotency idempotency = new Idempotency();
+    public Events events = new Events();
+    public Export export = new Export();
 }
 
 class SystemVault {
     public String type = "internal";
     public String friendlyName = "System Vault";
     public long internalVaultAutoSaveIntervalInSeconds = 60;
+    public int internalVaultFractionalDigits = 4;
+    public boolean internalVaultJournalEnabled = true;
+    public long internalVaultJournalGroupCommitInMillis = 10;
     public String externalPlayerVaultUUID = "0";
 }
 
@@ -22,3 +41,110 @@ class Misc {
     public boolean logTransactionToConsole = true;
     public boolean logTradeToConsole = true;
 }
+
+class Async {
+    public int workerThreads = 4;
+    public long shutdownTimeoutInMillis = 10000;
+}
+
+class Transaction {
+    public int batchSettlementMinReceivers = 2;
+    public int lockStripes = 1024;
+    public int rollbackAttempts = 3;
+}
+
+class Cache {
+    public boolean balanceCacheEnabled = false;
+    public int balanceCacheMaxEntries = 4096;
+    public long balanceCacheFlushIntervalInTicks = 20;
+    public long balanceCacheIdleEvictionInSeconds = 300;
+    public int balanceCacheMaxFlushAttempts = 5;
+    public int accountCacheMaxEntries = 16384;
+}
+
+class ReceiptStorage {
+    public boolean storeEnabled = true;
+    public long retentionDays = 0;
+    public int cachedSegmentIndexes = 8;
+    public int queueCapacity = 65536;
+}
+
+class Audit {
+    public boolean fileEnabled = true;
+    public boolean compressRotated = true;
+    public int bufferCapacity = 8192;
+    public String overflowPolicy = "drop";
+}
+
+class Metrics {
+    public boolean enabled = false;
+    public long fileIntervalInSeconds = 60;
+}
+
+class Ledger {
+    public boolean enabled = false;
+    public String backend = "native";
+    public int fractionalDigits = 2;
+    public double startingBalance = 0;
+    public String currencyNameSingular = "coin";
+    public String currencyNamePlural = "coins";
+    public long autoSaveIntervalInSeconds = 60;
+    public long journalGroupCommitInMillis = 10;
+}
+
+class Holds {
+    public long defaultDurationInSeconds = 300;
+    public long sweepIntervalInSeconds = 60;
+}
+
+class RateLimit {
+    public boolean enabled = false;
+    public double accountPermitsPerSecond = 10;
+    public double accountBurst = 40;
+    public double pluginPermitsPerSecond = 1000;
+    public double pluginBurst = 4000;
+    public long idleEvictionInSeconds = 300;
+}
+
+class Scheduler {
+    public long tickBudgetInMillis = 5;
+    public int maxQueuedTransactions = 100000;
+}
+
+class Leaderboard {
+    public boolean enabled = true;
+    public long seedTickBudgetInMillis = 2;
+}
+
+class Stats {
+    public boolean enabled = true;
+    public int topAccounts = 128;
+}
+
+class Jdbc {
+    public String url = "";
+    public String driverClass = "";
+    public String user = "";
+    public String password = "";
+    public String table = "ecore_ledger";
+    public int poolSize = 4;
+    public long connectionTimeoutInMillis = 5000;
+    public int maxRetries = 8;
+    public long groupCommitInMillis = 50;
+}
+
+class Idempotency {
+    public int maxEntries = 65536;
+    public long ttlInSeconds = 86400;
+    public boolean persistent = true;
+    public long compactIntervalInSeconds = 300;
+}
+
+class Events {
+    public int receiptListenerBufferCapacity = 65536;
+    public int receiptListenerMaxBatchSize = 1024;
+}
+
+class Export {
+    public long tickBudgetInMillis = 2;
+}
@@ -0,0 +1,57 @@
+package cat.nyaa.ecore;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files so that a crash, even of the machine, leaves either the complete old or the complete new content.
+ * <p>The new content is written to a temp file next to the target and forced to disk, then moved over the target
+ * atomically, and the move is made durable by syncing the directory. Once {@link #replace(Path, Content)} returns,
+ * whatever the new file supersedes, like a compacted journal, may be dropped.</p>
+ */
+final class DurableFiles {
+    private DurableFiles() {
+    }
+
+    @FunctionalInterface
+    interface Content {
+        /**
+         * write the content, without closing the stream.
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    static void replace(Path target, Content content) throws IOException {
+        var temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (var channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            var out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            content.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(target);
+    }
+
+    /**
+     * make a rename or creation of a file durable by syncing its directory, where the platform supports it.
+     */
+    static void forceDirectory(Path file) {
+        var directory = file.toAbsolutePath().getParent();
+        if (directory == null) {
+            return;
+        }
+        try (var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened on some platforms, which then make renames durable by themselves
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package cat.nyaa.ecore;
 
+import java.io.File;
 import java.util.List;
 import java.util.UUID;
 
@@ -104,6 +105,43 @@ public interface EconomyCore {
 
     TransactionResult playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference);
 
+    /**
+     * transfer like {@link #playerTransfer(UUID, UUID, double)}, at most once per idempotency key.
+     * <p>If a transaction with the same key has succeeded recently, its result is returned and no money moves again,
+     * whatever the other arguments are. Failed transactions are not remembered, a retry runs them again. Keys are
+     * shared by every plugin, so prefix them with something of your own, e.g. <code>"myshop:order:1234"</code>.</p>
+     *
+     * @param idempotencyKey a key unique to this transfer, at most 255 characters
+     * @return the result of the transfer, or of the first successful one with this key
+     */
+    TransactionResult playerTransfer(String idempotencyKey, UUID fromVault, UUID toVault, double amount);
+
+    /**
+     * trade like {@link #playerTrade(UUID, UUID, double)}, at most once per idempotency key.
+     *
+     * @see #playerTransfer(String, UUID, UUID, double)
+     */
+    TransactionResult playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price);
+
+    /**
+     * trade like {@link #playerTrade(UUID, UUID, double, double, double, double, ServiceFeePreference)}, at most once per idempotency key.
+     *
+     * @see #playerTransfer(String, UUID, UUID, double)
+     */
+    TransactionResult playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference);
+
+    /**
+     * settle a burst of trades and transfers at once by netting them.
+     * <p>Each account is charged or credited its net amount with a single upstream call, and the fees are credited to
+     * the system vault at once. Trades whose payer can not cover its net position fail with
+     * {@link TransactionStatus#INSUFFICIENT_BALANCE}. If an upstream call fails, the batch is rolled back and every
+     * trade is settled on its own instead.</p>
+     *
+     * @param trades the trades to settle
+     * @return the result of every trade, in the same order, each successful one with its own receipt
+     */
+    List<TransactionResult> playerTradeBatch(List<TradeRequest> trades);
+
 
     /**
      * add balance to an account.
@@ -171,6 +209,130 @@ public interface EconomyCore {
      */
     double getSystemBalance();
 
+    /**
+     * get the balance of an account minus the funds currently held on it.
+     *
+     * @param vault the account to get
+     * @return the balance available to spend
+     */
+    double getAvailableBalance(UUID vault);
+
+    /**
+     * reserve funds on an account for the default hold duration, see {@link #hold(UUID, double, long)}.
+     */
+    HoldId hold(UUID vault, double amount);
+
+    /**
+     * reserve funds on an account, e.g. for the highest bid of an auction.
+     * <p>The funds stay in the account but can not be spent by other transactions until the hold is captured,
+     * released or expires. Holds live in memory only and are lost when the server stops.</p>
+     *
+     * @param vault          the account to hold funds on
+     * @param amount         the amount to hold
+     * @param durationMillis time after which the hold expires by itself
+     * @return the hold, or null if the available balance is insufficient or the account is rate limited
+     */
+    HoldId hold(UUID vault, double amount, long durationMillis);
+
+    /**
+     * settle a hold as a trade of the held amount to a merchant, with the trade fee rate.
+     *
+     * @see #capture(HoldId, UUID, double)
+     */
+    TransactionResult capture(HoldId holdId, UUID merchant);
+
+    /**
+     * settle a hold as a trade of the held amount to a merchant, like {@link #playerTrade(UUID, UUID, double, double)}.
+     * <p>If the trade fails, the hold is kept until it expires.</p>
+     *
+     * @param holdId   the hold to settle
+     * @param merchant the receiver of the funds
+     * @param feeRate  the fee rate of the trade
+     * @return the result of the trade, with status {@link TransactionStatus#HOLD_NOT_FOUND} if the hold does not exist
+     * or has expired
+     */
+    TransactionResult capture(HoldId holdId, UUID merchant, double feeRate);
+
+    /**
+     * give held funds back to the available balance of the account.
+     *
+     * @param holdId the hold to release
+     * @return true if the hold existed and had not expired
+     */
+    boolean release(HoldId holdId);
+
+    /**
+     * get a past receipt by its id.
+     * <p>Reads from disk, avoid calling it on the main thread.</p>
+     *
+     * @param receiptId the id of the receipt, see {@link Receipt#getId()}
+     * @return the receipt, or null if not found or the receipt store is disabled
+     */
+    Receipt getReceipt(long receiptId);
+
+    /**
+     * get receipts paid or received by an account within a time range, newest first.
+     * <p>Reads from disk, avoid calling it on the main thread.</p>
+     *
+     * @param vault      the account to look up
+     * @param fromMillis start of the time range in milliseconds since the epoch, inclusive
+     * @param toMillis   end of the time range in milliseconds since the epoch, inclusive
+     * @param offset     number of matching receipts to skip
+     * @param limit      maximum number of receipts to return
+     * @return matching receipts, empty if the receipt store is disabled
+     */
+    List<Receipt> getReceipts(UUID vault, long fromMillis, long toMillis, int offset, int limit);
+
+    /**
+     * receive the receipt of every successful transaction from now on, in batches on a background thread.
+     * <p>Unlike a listener of {@link PostTransactionEvent}, a receipt listener adds no latency to transactions.</p>
+     *
+     * @param listener the listener, registering it twice has no effect
+     */
+    void registerReceiptListener(ReceiptListener listener);
+
+    /**
+     * stop delivering receipts to a listener registered by {@link #registerReceiptListener(ReceiptListener)}.
+     */
+    void unregisterReceiptListener(ReceiptListener listener);
+
+    /**
+     * write the balance of every account known to the server and of the system vault to a file.
+     * <p>Balances of an economy that must be read on the main thread are read there within a small time budget per
+     * tick, others are read asynchronously, and all are written out asynchronously, so a large export does not stall
+     * the server. See {@link BalanceExport} for what the result is consistent with.</p>
+     *
+     * @param file   the file to write, replaced once the export is complete
+     * @param format the file format
+     * @return the running export, to follow its progress
+     */
+    BalanceExport exportBalances(File file, ExportFormat format);
+
+    /**
+     * get the accounts with the highest balances, the system account excluded.
+     * <p>The leaderboard is seeded once on startup and then follows every balance ECore changes or reads, so a change
+     * made to the upstream economy directly shows up once ECore next sees the account.</p>
+     *
+     * @param limit maximum number of accounts to return
+     * @return up to <code>limit</code> accounts, highest balance first, empty if the leaderboard is disabled
+     */
+    List<LeaderboardEntry> getTopBalances(int limit);
+
+    /**
+     * get the leaderboard rank of an account, see {@link #getTopBalances(int)}.
+     *
+     * @param vault the account to look up
+     * @return 1-based rank, or 0 if the account is not ranked or the leaderboard is disabled
+     */
+    int getBalanceRank(UUID vault);
+
+    /**
+     * get live statistics of the transactions settled since the server started.
+     *
+     * @return the statistics, all zero if disabled
+     */
+    EconomyStats getStats();
+
     /**
      * get the transfer fee rate setting in <code>double</code>. For example, <code>0.02</code> for <code>2%</code>.
      *
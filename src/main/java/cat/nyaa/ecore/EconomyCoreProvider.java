@@ -7,31 +7,90 @@ import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToDoubleFunction;
+import java.util.logging.Level;
 
 public class EconomyCoreProvider implements EconomyCore {
+    private static final byte JOURNAL_SYSTEM_DEPOSIT = 1;
+    private static final byte JOURNAL_SYSTEM_WITHDRAW = 2;
+    private static final byte JOURNAL_SYSTEM_SET = 3;
+    // row of the system vault in a shared ledger table, never a real player UUID
+    private static final UUID JDBC_SYSTEM_ACCOUNT = new UUID(0, 0);
+    private static final TransactionResult RATE_LIMITED = TransactionResultInternal.failure(TransactionStatus.RATE_LIMITED);
+    private static final TransactionResult CANCELLED = TransactionResultInternal.failure(TransactionStatus.CANCELLED);
+
     private final Economy economy;
-    private final ThreadLocalRandom random = ThreadLocalRandom.current();
+    // the economy as provided, which economy may wrap to record metrics; test its type on this one
+    private final Economy upstream;
+    private final ReceiptIdGenerator receiptIds = new ReceiptIdGenerator();
     private final File economyCoreInternalDataFile;
+    private final File economyCoreJournalFile;
     private final Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
     private final JavaPlugin pluginInstance;
+    private final AccountResolver accountResolver;
+    private final EconomyMetrics metrics;
+    private final StripedLocks accountLocks;
+    // transactions share the read lock, since fee credits commute; withdrawing or setting the system balance takes the write lock
+    private final ReentrantReadWriteLock systemVaultLock = new ReentrantReadWriteLock();
+    private final HoldTable holds = new HoldTable();
+    private final JdbcLedgerStore jdbcStore;
+    private TokenBuckets<UUID> accountLimits = null;
+    private TokenBuckets<String> pluginLimits = null;
+    private BalanceIndex leaderboard = null;
+    private EconomyStatsCollector stats;
+    private TransactionEvents events;
     private Config config;
-    private double internalVaultBalance;
+    private InternalVault internalVault = null;
+    private WriteAheadJournal journal = null;
+    private WriteAheadJournal.Snapshot lastSavedSnapshot = null;
+    private BukkitTask autoSaveTask = null;
+    private volatile BukkitTask leaderboardSeedTask = null;
     private OfflinePlayer vaultPlayer = null;
+    private JdbcLedgerStore jdbcVault = null;
+    private IdempotencyCache idempotencyCache;
+    private double jdbcVaultScale = 1;
     private boolean isInternalVaultEnabled;
+    private BalanceCache balanceCache = null;
+    private ReceiptStore receiptStore = null;
+    private AuditLog auditLog;
 
     public EconomyCoreProvider(Config config, Economy economy, JavaPlugin pluginInstance) throws IOException {
-        this.economy = economy;
+        this(config, economy, pluginInstance, null);
+    }
+
+    /**
+     * @param jdbcStore shared ledger store holding the system vault if its type is <code>jdbc</code>, owned by the caller
+     */
+    EconomyCoreProvider(Config config, Economy economy, JavaPlugin pluginInstance, JdbcLedgerStore jdbcStore) throws IOException {
+        this.jdbcStore = jdbcStore;
+        this.metrics = new EconomyMetrics(config.metrics.enabled);
+        this.economy = metrics.instrument(economy);
+        this.upstream = economy;
         this.pluginInstance = pluginInstance;
+        this.accountResolver = new AccountResolver(this.economy, config.cache.accountCacheMaxEntries);
+        this.accountLocks = new StripedLocks(config.transaction.lockStripes);
         economyCoreInternalDataFile = new File(pluginInstance.getDataFolder(), "ecore_internal_data.json");
+        economyCoreJournalFile = new File(pluginInstance.getDataFolder(), "ecore_journal.bin");
         load(config);
     }
 
@@ -39,25 +98,45 @@ public class EconomyCoreProvider implements EconomyCore {
         this.config = config;
         if (config.vault.type.equals("internal")) {
             isInternalVaultEnabled = true;
+            internalVault = new InternalVault(config.vault.internalVaultFractionalDigits);
+            var snapshotSeq = 0L;
             if (economyCoreInternalDataFile.createNewFile() || economyCoreInternalDataFile.length() == 0) {
                 pluginInstance.getLogger().info("Created new ecore data file.");
-                internalVaultBalance = 0;
+                internalVault.set(0);
             } else {
                 var ecoreData = gson.fromJson(new FileReader(economyCoreInternalDataFile), EcoreDataInternal.class);
                 if (ecoreData == null) {
-                    ecoreData = new EcoreDataInternal(0);
-                    saveInternalVaultBalance();
+                    ecoreData = new EcoreDataInternal(0, 0);
+                    saveInternalVaultBalance(true);
                 }
-                internalVaultBalance = ecoreData.getInternalVaultBalance();
+                internalVault.set(internalVault.toMinor(ecoreData.getInternalVaultBalance()));
+                snapshotSeq = ecoreData.getJournalSeq();
                 pluginInstance.getLogger().info("Loaded ecore data file.");
             }
-            pluginInstance.getServer().getScheduler().runTaskTimer(pluginInstance, () -> {
+            // replay a leftover journal even if journaling has been turned off since, then fold it into the snapshot
+            if (config.vault.internalVaultJournalEnabled || economyCoreJournalFile.exists()) {
+                journal = new WriteAheadJournal(economyCoreJournalFile, config.vault.internalVaultJournalGroupCommitInMillis, pluginInstance.getLogger());
+                var lastSeq = journal.open(snapshotSeq, this::replayJournal);
+                if (lastSeq > snapshotSeq) {
+                    pluginInstance.getLogger().info("Replayed journal up to #" + lastSeq + ".");
+                }
+                if (!config.vault.internalVaultJournalEnabled) {
+                    saveInternalVaultBalance(true);
+                    journal.close();
+                    journal = null;
+                    if (!economyCoreJournalFile.delete()) {
+                        pluginInstance.getLogger().warning("Failed to delete " + economyCoreJournalFile.getName() + ".");
+                    }
+                }
+            }
+            var autoSaveInterval = 20 * config.vault.internalVaultAutoSaveIntervalInSeconds;
+            autoSaveTask = pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, () -> {
                 try {
-                    saveInternalVaultBalance();
+                    saveInternalVaultBalance(false);
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
-            }, 0, 20 * config.vault.internalVaultAutoSaveIntervalInSeconds);
+            }, autoSaveInterval, autoSaveInterval);
             pluginInstance.getLogger().info("Using " + config.vault.type + " vault as system account.");
         } else if (config.vault.type.equals("external")) {
             isInternalVaultEnabled = false;
@@ -67,83 +146,435 @@ public class EconomyCoreProvider implements EconomyCore {
                 pluginInstance.getLogger().info("Created new external vault account.");
             }
             pluginInstance.getLogger().info("Using " + config.vault.type + " vault as system account. Vault account UUID: " + vaultPlayer.getUniqueId());
+        } else if (config.vault.type.equals("jdbc")) {
+            if (jdbcStore == null) {
+                throw new RuntimeException("Vault type jdbc needs a JDBC ledger store, see the jdbc config section.");
+            }
+            isInternalVaultEnabled = false;
+            jdbcVault = jdbcStore;
+            jdbcVaultScale = Math.pow(10, config.vault.internalVaultFractionalDigits);
+            pluginInstance.getLogger().info("Using " + config.vault.type + " vault as system account, shared through the database.");
         } else {
             throw new RuntimeException("Unknown vault type: " + config.vault.type);
         }
+        if (config.cache.balanceCacheEnabled) {
+            balanceCache = new BalanceCache(economy, accountResolver::resolve, pluginInstance.getLogger(), config.cache.balanceCacheMaxEntries, TimeUnit.SECONDS.toNanos(config.cache.balanceCacheIdleEvictionInSeconds),
+                    config.cache.balanceCacheMaxFlushAttempts);
+            metrics.gauge("balance_cache_unsettled", balanceCache::getUnsettled);
+            var flushInterval = Math.max(1, config.cache.balanceCacheFlushIntervalInTicks);
+            pluginInstance.getServer().getScheduler().runTaskTimer(pluginInstance, balanceCache::flush, flushInterval, flushInterval);
+            pluginInstance.getLogger().info("Balance cache enabled, flushing every " + flushInterval + " ticks.");
+        }
+        if (metrics.isEnabled() && config.metrics.fileIntervalInSeconds > 0) {
+            var metricsFile = new File(pluginInstance.getDataFolder(), "metrics.prom").toPath();
+            var metricsInterval = 20 * config.metrics.fileIntervalInSeconds;
+            pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, () -> {
+                try {
+                    metrics.writePrometheus(metricsFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, metricsInterval, metricsInterval);
+        }
+        var holdSweepInterval = Math.max(1, 20 * config.hold.sweepIntervalInSeconds);
+        pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, () -> holds.sweep(System.currentTimeMillis()), holdSweepInterval, holdSweepInterval);
+        if (config.rateLimit.enabled) {
+            var idleEviction = TimeUnit.SECONDS.toMillis(config.rateLimit.idleEvictionInSeconds);
+            if (config.rateLimit.accountPermitsPerSecond > 0) {
+                accountLimits = new TokenBuckets<>(config.rateLimit.accountPermitsPerSecond, config.rateLimit.accountBurst, idleEviction);
+            }
+            if (config.rateLimit.pluginPermitsPerSecond > 0) {
+                pluginLimits = new TokenBuckets<>(config.rateLimit.pluginPermitsPerSecond, config.rateLimit.pluginBurst, idleEviction);
+            }
+            var evictionInterval = Math.max(20, 20 * config.rateLimit.idleEvictionInSeconds / 4);
+            pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, () -> {
+                if (accountLimits != null) {
+                    accountLimits.evictIdle();
+                }
+                if (pluginLimits != null) {
+                    pluginLimits.evictIdle();
+                }
+            }, evictionInterval, evictionInterval);
+            pluginInstance.getLogger().info("Rate limiting enabled.");
+        }
+        if (config.leaderboard.enabled) {
+            leaderboard = new BalanceIndex();
+            seedLeaderboard(TimeUnit.MILLISECONDS.toNanos(config.leaderboard.seedTickBudgetInMillis));
+            pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, leaderboard::drain, 20, 20);
+        }
+        stats = new EconomyStatsCollector(config.stats.enabled, config.stats.topAccounts, () -> leaderboard == null ? Double.NaN : leaderboard.total());
+        events = new TransactionEvents(config.events.receiptListenerBufferCapacity, config.events.receiptListenerMaxBatchSize, pluginInstance.getLogger());
+        metrics.gauge("receipt_listener_dropped", events::getDropped);
+        if (stats.isEnabled()) {
+            events.register(stats);
+        }
+        auditLog = new AuditLog(new File(pluginInstance.getDataFolder(), "audit"), config.misc.logTradeToConsole, config.misc.logTransactionToConsole,
+                config.audit.fileEnabled, config.audit.compressRotated, config.audit.bufferCapacity, config.audit.overflowPolicy, pluginInstance.getLogger());
+        if (config.receipt.storeEnabled) {
+            receiptStore = new ReceiptStore(new File(pluginInstance.getDataFolder(), "receipts"), config.receipt.cachedSegmentIndexes, config.receipt.retentionDays, config.receipt.queueCapacity, pluginInstance.getLogger());
+            metrics.gauge("receipt_store_dropped", receiptStore::getDropped);
+        }
+        idempotencyCache = new IdempotencyCache(config.idempotency.maxEntries, TimeUnit.SECONDS.toMillis(config.idempotency.ttlInSeconds),
+                config.idempotency.persistent ? new File(pluginInstance.getDataFolder(), "ecore_idempotency.bin") : null, pluginInstance.getLogger());
+        idempotencyCache.open();
+        if (config.idempotency.persistent) {
+            var compactInterval = 20 * config.idempotency.compactIntervalInSeconds;
+            pluginInstance.getServer().getScheduler().runTaskTimerAsynchronously(pluginInstance, () -> {
+                try {
+                    idempotencyCache.compact();
+                } catch (IOException e) {
+                    pluginInstance.getLogger().log(Level.WARNING, "Failed to compact the idempotency file", e);
+                }
+            }, compactInterval, compactInterval);
+        }
+    }
+
+    /**
+     * index the balance of every known account, a tick budget at a time on the main thread, or all at once off it
+     * when the economy is ECore's own ledger, which is thread-safe.
+     */
+    private void seedLeaderboard(long tickBudgetNanos) {
+        var players = Bukkit.getOfflinePlayers();
+        var scheduler = pluginInstance.getServer().getScheduler();
+        if (upstream instanceof LedgerEconomy) {
+            leaderboardSeedTask = scheduler.runTaskAsynchronously(pluginInstance, () -> {
+                for (var player : players) {
+                    var task = leaderboardSeedTask;
+                    if (task != null && task.isCancelled()) {
+                        return;
+                    }
+                    seedLeaderboard(player);
+                }
+                pluginInstance.getLogger().info("Seeded balance leaderboard with " + leaderboard.size() + " accounts.");
+            });
+            return;
+        }
+        var next = new int[1];
+        leaderboardSeedTask = scheduler.runTaskTimer(pluginInstance, () -> {
+            // at least one account per tick, however small the budget
+            var deadline = System.nanoTime() + tickBudgetNanos;
+            while (next[0] < players.length) {
+                seedLeaderboard(players[next[0]++]);
+                if (System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+            }
+            if (next[0] == players.length) {
+                leaderboardSeedTask.cancel();
+                pluginInstance.getLogger().info("Seeded balance leaderboard with " + leaderboard.size() + " accounts.");
+            }
+        }, 1, 1);
+    }
+
+    private void seedLeaderboard(OfflinePlayer player) {
+        if (isRanked(player.getUniqueId()) && economy.hasAccount(player)) {
+            leaderboard.seed(player.getUniqueId(), economy.getBalance(player));
+        }
     }
 
-    private void saveInternalVaultBalance() throws IOException {
-        var ecoreData = new EcoreDataInternal(internalVaultBalance);
-        var writer = new FileWriter(economyCoreInternalDataFile);
-        gson.toJson(ecoreData, writer);
-        writer.close();
+    private boolean isRanked(UUID vault) {
+        return vaultPlayer == null || !vaultPlayer.getUniqueId().equals(vault);
+    }
+
+    private void indexBalance(UUID vault, double balance) {
+        if (leaderboard != null && isRanked(vault)) {
+            leaderboard.update(vault, balance);
+        }
+    }
+
+    private void replayJournal(byte type, long seq, long a, long b, long c) {
+        switch (type) {
+            case JOURNAL_SYSTEM_DEPOSIT -> internalVault.deposit(a);
+            case JOURNAL_SYSTEM_WITHDRAW -> internalVault.deposit(-a);
+            case JOURNAL_SYSTEM_SET -> internalVault.set(a);
+            default -> {
+                // player and transaction records written by older versions, the upstream economy owns those balances
+            }
+        }
+    }
+
+    /**
+     * durably replace the data file with a consistent snapshot of the internal vault, then compact the journal behind it.
+     *
+     * @param force write even if nothing changed since the last save
+     */
+    private synchronized void saveInternalVaultBalance(boolean force) throws IOException {
+        var snapshot = journal != null ? journal.snapshot(internalVault::balance) : new WriteAheadJournal.Snapshot(0, internalVault.balance());
+        if (!force && snapshot.equals(lastSavedSnapshot)) {
+            return;
+        }
+        var start = metrics.start();
+        var ecoreData = new EcoreDataInternal(internalVault.toMajor(snapshot.state()), snapshot.seq());
+        DurableFiles.replace(economyCoreInternalDataFile.toPath(), out -> {
+            var writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(ecoreData, writer);
+            writer.flush();
+        });
+        if (journal != null) {
+            journal.compact(snapshot.seq());
+        }
+        lastSavedSnapshot = snapshot;
+        metrics.record(EconomyMetrics.Operation.AUTOSAVE, start);
     }
 
     public void onDisable() {
-        try {
-            saveInternalVaultBalance();
-        } catch (IOException e) {
-            e.printStackTrace();
+        events.close();
+        auditLog.close();
+        idempotencyCache.close();
+        if (receiptStore != null) {
+            receiptStore.close();
+        }
+        if (balanceCache != null) {
+            balanceCache.flushAll();
+        }
+        if (autoSaveTask != null) {
+            autoSaveTask.cancel();
+        }
+        if (leaderboardSeedTask != null) {
+            leaderboardSeedTask.cancel();
+        }
+        if (jdbcVault != null) {
+            try {
+                jdbcVault.flush();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        if (isInternalVaultEnabled) {
+            try {
+                saveInternalVaultBalance(true);
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
-    private TransactionResult transactionWithFeeRate(UUID fromVault, List<UUID> toVaults, double amount, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
-        var transactedPlayers = new ArrayList<UUID>();
-        var transactionFee = amount * feeRate;
-        if (transactionFee < feeMin)
-            transactionFee = feeMin;
-        else if (transactionFee > feeMax)
-            transactionFee = feeMax;
-
-        var amountNeedPerTransaction = switch (serviceFeePreference){
+    EconomyMetrics getMetrics() {
+        return metrics;
+    }
+
+    AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    File getDataFolder() {
+        return pluginInstance.getDataFolder();
+    }
+
+    /**
+     * @return the per-account rate limiter, null if disabled
+     */
+    TokenBuckets<UUID> getAccountLimits() {
+        return accountLimits;
+    }
+
+    /**
+     * @return the per-plugin rate limiter, null if disabled
+     */
+    TokenBuckets<String> getPluginLimits() {
+        return pluginLimits;
+    }
+
+    private TransactionResult success(ReceiptInternal receipt) {
+        if (receiptStore != null) {
+            receiptStore.append(receipt);
+        }
+        return receipt;
+    }
+
+    private static double feeOf(double amount, double feeRate, double feeMin, double feeMax) {
+        var fee = amount * feeRate;
+        if (fee < feeMin)
+            return feeMin;
+        else if (fee > feeMax)
+            return feeMax;
+        return fee;
+    }
+
+    private static double amountNeed(double amount, double fee, ServiceFeePreference serviceFeePreference) {
+        return switch (serviceFeePreference) {
             case INTERNAL -> amount;
-            case ADDITIONAL -> amount + transactionFee;
+            case ADDITIONAL -> amount + fee;
         };
+    }
 
-        var amountArrivePerTransaction = switch (serviceFeePreference) {
-            case INTERNAL -> amount - transactionFee;
+    private static double amountArrive(double amount, double fee, ServiceFeePreference serviceFeePreference) {
+        return switch (serviceFeePreference) {
+            case INTERNAL -> amount - fee;
             case ADDITIONAL -> amount;
         };
+    }
+
+    /**
+     * run a trade with a single receiver, like {@link #transactionWithFeeRate} but allocating nothing except the receipt.
+     */
+    private TransactionResult tradeWithFeeRate(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        accountLocks.lockPair(consumer, merchant);
+        systemVaultLock.readLock().lock();
+        try {
+            var fee = feeOf(price, feeRate, feeMin, feeMax);
+            var amountNeed = amountNeed(price, fee, serviceFeePreference);
+            var amountArrive = amountArrive(price, fee, serviceFeePreference);
+            if (getAvailableBalance(consumer) < amountNeed) {
+                return TransactionResultInternal.failure(TransactionStatus.INSUFFICIENT_BALANCE);
+            }
+            if (!settle(consumer, merchant, price, amountNeed, amountArrive, fee)) {
+                return TransactionResultInternal.failure(TransactionStatus.UNKNOWN_ERROR);
+            }
+            var id = receiptIds.next();
+            return success(new ReceiptInternal(consumer, merchant, price, amountArrive, fee, feeRate, getPlayerBalance(consumer), serviceFeePreference, id, ReceiptIdGenerator.timestampOf(id)));
+        } finally {
+            systemVaultLock.readLock().unlock();
+            accountLocks.unlockPair(consumer, merchant);
+        }
+    }
 
-        if (getPlayerBalance(fromVault) < amountNeedPerTransaction) {
-            return new TransactionResultInternal(TransactionStatus.INSUFFICIENT_BALANCE, null);
+    /**
+     * move one share from the payer to one receiver and the fee to the system vault, rolling back on failure.
+     *
+     * @return false if nothing has been moved
+     */
+    private boolean settle(UUID fromVault, UUID toVault, double amount, double amountNeed, double amountArrive, double fee) {
+        //step 0: withdraw from vault
+        if (!withdrawPlayerAdmitted(fromVault, amountNeed)) {
+            return false;
         }
 
+        //step 1: deposit service fee to system vault
+        var depositServiceFeeSuccess = depositSystemVaultUnlocked(fee);
+        if (!depositServiceFeeSuccess) {
+            metrics.recordRollback();
+            rollback(() -> depositPlayerAdmitted(fromVault, amountNeed), "deposit " + amountNeed + " to " + fromVault);
+            return false;
+        }
+        //step2: deposit to target Vault
+        var depositPlayerSuccess = depositPlayerAdmitted(toVault, amountArrive);
+        if (!depositPlayerSuccess) {
+            metrics.recordRollback();
+            rollback(() -> withdrawSystemVaultUnlocked(fee), "withdraw " + fee + " from system vault and " + "deposit " + amount + " to " + fromVault);
+            rollback(() -> depositPlayerAdmitted(fromVault, amountNeed), "deposit " + amountNeed + " to " + fromVault);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * run a transaction holding the locks of every involved account, then a read lock on the system vault, in this order.
+     * <p>Nothing else can change the involved balances between the balance check and the last step, and the system
+     * vault cannot be drained below the fees credited so far, so rolling back the fee cannot fail for lack of funds.</p>
+     */
+    private TransactionResult transactionWithFeeRate(UUID fromVault, List<UUID> toVaults, double amount, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        var locked = accountLocks.lock(fromVault, toVaults);
+        systemVaultLock.readLock().lock();
+        try {
+            return transactionWithFeeRateLocked(fromVault, toVaults, amount, feeRate, feeMin, feeMax, serviceFeePreference);
+        } finally {
+            systemVaultLock.readLock().unlock();
+            locked.unlock();
+        }
+    }
+
+    private TransactionResult transactionWithFeeRateLocked(UUID fromVault, List<UUID> toVaults, double amount, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        var transactionFee = feeOf(amount, feeRate, feeMin, feeMax);
+        var amountNeedPerTransaction = amountNeed(amount, transactionFee, serviceFeePreference);
+        var amountArrivePerTransaction = amountArrive(amount, transactionFee, serviceFeePreference);
+
+        var payerBalance = getAvailableBalance(fromVault);
+        if (payerBalance < amountNeedPerTransaction) {
+            return TransactionResultInternal.failure(TransactionStatus.INSUFFICIENT_BALANCE);
+        }
+
+        var batchMinReceivers = config.transaction.batchSettlementMinReceivers;
+        if (batchMinReceivers > 0 && toVaults.size() >= batchMinReceivers && payerBalance >= amountNeedPerTransaction * toVaults.size()) {
+            return batchTransaction(fromVault, toVaults, amount, amountNeedPerTransaction, amountArrivePerTransaction, transactionFee, feeRate, serviceFeePreference);
+        }
+
+        var transactedPlayers = new UUID[toVaults.size()];
+        var transacted = 0;
         for (UUID toVault : toVaults) {
-            //step 0: withdraw from vault
-            if (!withdrawPlayer(fromVault, amountNeedPerTransaction)) {
+            if (!settle(fromVault, toVault, amount, amountNeedPerTransaction, amountArrivePerTransaction, transactionFee)) {
                 break;
             }
+            transactedPlayers[transacted++] = toVault;
+        }
 
-            //step 1: deposit service fee to system vault
-            var depositServiceFeeSuccess = depositSystemVault(transactionFee);
-            if (!depositServiceFeeSuccess) {
-                var rollbackSuccess = depositPlayer(fromVault, amountNeedPerTransaction);
-                if (!rollbackSuccess) {
-                    throw new RuntimeException("Failed to rollback transaction: deposit " + amountNeedPerTransaction + " to " + fromVault + " failed.");
-                }
-                break;
+        if (transacted == 0) {
+            return TransactionResultInternal.failure(TransactionStatus.UNKNOWN_ERROR);
+        } else {
+            var id = receiptIds.next();
+            return success(new ReceiptInternal(fromVault, Arrays.copyOf(transactedPlayers, transacted), ReceiptInternal.NO_RECEIVERS, amount, amountArrivePerTransaction,
+                    transactionFee, feeRate, getPlayerBalance(fromVault), serviceFeePreference, id, ReceiptIdGenerator.timestampOf(id)));
+        }
+    }
+
+    /**
+     * run a rollback step, retrying it a few times since the involved accounts are locked and a failure can only be a transient upstream one.
+     *
+     * @throws RuntimeException if every attempt failed
+     */
+    private void rollback(BooleanSupplier step, String description) {
+        var attempts = Math.max(1, config.transaction.rollbackAttempts);
+        for (int i = 0; i < attempts; i++) {
+            if (step.getAsBoolean()) {
+                return;
             }
-            //step2: deposit to target Vault
-            var depositPlayerSuccess = depositPlayer(toVault, amountArrivePerTransaction);
-            if (!depositPlayerSuccess) {
-                var rollbackStep1Success = withdrawSystemVault(transactionFee);
-                if (!rollbackStep1Success) {
-                    throw new RuntimeException("Failed to rollback transaction: withdraw " + transactionFee + " from system vault and " + "deposit " + amount + " to " + fromVault + " failed.");
-                }
-                var rollbackStep0Success = depositPlayer(fromVault, amountNeedPerTransaction);
-                if (!rollbackStep0Success) {
-                    throw new RuntimeException("Failed to rollback transaction: deposit " + amountNeedPerTransaction + " to " + fromVault + " failed.");
-                }
-                break;
+        }
+        throw new RuntimeException("Failed to rollback transaction: " + description + " failed.");
+    }
+
+    /**
+     * settle a multi-receiver transaction with one payer withdraw and one system vault deposit, then fan out deposits.
+     * <p>Receivers whose deposit fails are refunded to the payer in one aggregated rollback and reported by
+     * {@link Receipt#getFailedReceivers()}.</p>
+     */
+    private TransactionResult batchTransaction(UUID fromVault, List<UUID> toVaults, double amount, double amountNeedPerTransaction, double amountArrivePerTransaction, double transactionFee, double feeRate, ServiceFeePreference serviceFeePreference) {
+        var receiverCount = toVaults.size();
+        var amountNeedTotally = amountNeedPerTransaction * receiverCount;
+        var transactionFeeTotally = transactionFee * receiverCount;
+
+        //step 0: withdraw the total from payer
+        if (!withdrawPlayerAdmitted(fromVault, amountNeedTotally)) {
+            return TransactionResultInternal.failure(TransactionStatus.UNKNOWN_ERROR);
+        }
+
+        //step 1: deposit the aggregated service fee to system vault
+        if (!depositSystemVaultUnlocked(transactionFeeTotally)) {
+            metrics.recordRollback();
+            rollback(() -> depositPlayerAdmitted(fromVault, amountNeedTotally), "deposit " + amountNeedTotally + " to " + fromVault);
+            return TransactionResultInternal.failure(TransactionStatus.UNKNOWN_ERROR);
+        }
+
+        //step 2: fan out deposits to receivers
+        var transactedPlayers = new UUID[receiverCount];
+        var failedPlayers = new UUID[receiverCount];
+        var transacted = 0;
+        var failed = 0;
+        for (UUID toVault : toVaults) {
+            if (depositPlayerAdmitted(toVault, amountArrivePerTransaction)) {
+                transactedPlayers[transacted++] = toVault;
+            } else {
+                failedPlayers[failed++] = toVault;
             }
-            transactedPlayers.add(toVault);
         }
 
-        if (transactedPlayers.isEmpty()) {
-            return new TransactionResultInternal(TransactionStatus.UNKNOWN_ERROR, null);
+        //step 3: roll back the share of failed receivers in one go
+        if (failed > 0) {
+            metrics.recordRollback();
+            var feeRefund = transactionFee * failed;
+            var payerRefund = amountNeedPerTransaction * failed;
+            rollback(() -> withdrawSystemVaultUnlocked(feeRefund), "withdraw " + feeRefund + " from system vault and " + "deposit " + payerRefund + " to " + fromVault);
+            rollback(() -> depositPlayerAdmitted(fromVault, payerRefund), "deposit " + payerRefund + " to " + fromVault);
+        }
+
+        if (transacted == 0) {
+            return TransactionResultInternal.failure(TransactionStatus.UNKNOWN_ERROR);
         } else {
-            return new TransactionResultInternal(TransactionStatus.SUCCESS, new ReceiptInternal(fromVault, transactedPlayers, amount, amountArrivePerTransaction, transactionFee, feeRate, getPlayerBalance(fromVault), serviceFeePreference, random.nextLong()));
+            var id = receiptIds.next();
+            return success(new ReceiptInternal(fromVault, Arrays.copyOf(transactedPlayers, transacted), failed == 0 ? ReceiptInternal.NO_RECEIVERS : Arrays.copyOf(failedPlayers, failed),
+                    amount, amountArrivePerTransaction, transactionFee, feeRate, getPlayerBalance(fromVault), serviceFeePreference, id, ReceiptIdGenerator.timestampOf(id)));
         }
     }
 
@@ -159,9 +590,18 @@ public class EconomyCoreProvider implements EconomyCore {
 
     @Override
     public TransactionResult playerTransferToMultiple(UUID fromVault, List<UUID> toVault, double amount, ServiceFeePreference serviceFeePreference) {
+        if (!admit(fromVault)) {
+            return RATE_LIMITED;
+        }
+        if (!events.firePre(fromVault, toVault, amount, config.serviceFee.transferFee, serviceFeePreference)) {
+            return CANCELLED;
+        }
+        var start = metrics.start();
+        var upstreamCalls = metrics.upstreamCallsOnThread();
         var receipt = transactionWithFeeRate(fromVault, toVault, amount, config.serviceFee.transferFee, 0, Double.MAX_VALUE, serviceFeePreference);
-        if (config.misc.logTransactionToConsole)
-            pluginInstance.getLogger().info("(Transfer) " + receipt);
+        metrics.recordTransaction(EconomyMetrics.Operation.PLAYER_TRANSFER, start, upstreamCalls, receipt.status());
+        auditLog.record(AuditLog.Channel.TRANSFER, fromVault, amount, receipt);
+        events.firePost(receipt);
         return receipt;
     }
 
@@ -188,244 +628,681 @@ public class EconomyCoreProvider implements EconomyCore {
 
     @Override
     public TransactionResult playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax) {
-        var receipt = transactionWithFeeRate(consumer, List.of(merchant), price, feeRate, feeMin, feeMax, ServiceFeePreference.INTERNAL);
-        if (config.misc.logTransactionToConsole)
-            pluginInstance.getLogger().info("(Trade) " + receipt);
-        return receipt;
+        return playerTrade(consumer, merchant, price, feeRate, feeMin, feeMax, ServiceFeePreference.INTERNAL);
     }
 
     @Override
     public TransactionResult playerTrade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
-        var receipt = transactionWithFeeRate(consumer, List.of(merchant), price, feeRate, feeMin, feeMax, serviceFeePreference);
-        if (config.misc.logTransactionToConsole)
-            pluginInstance.getLogger().info("(Trade) " + receipt);
+        if (!admit(consumer)) {
+            return RATE_LIMITED;
+        }
+        if (!events.firePre(consumer, merchant, price, feeRate, serviceFeePreference)) {
+            return CANCELLED;
+        }
+        var result = trade(consumer, merchant, price, feeRate, feeMin, feeMax, serviceFeePreference);
+        events.firePost(result);
+        return result;
+    }
+
+    @Override
+    public TransactionResult playerTransfer(String idempotencyKey, UUID fromVault, UUID toVault, double amount) {
+        return idempotencyCache.execute(checkIdempotencyKey(idempotencyKey), () -> playerTransfer(fromVault, toVault, amount));
+    }
+
+    @Override
+    public TransactionResult playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price) {
+        return idempotencyCache.execute(checkIdempotencyKey(idempotencyKey), () -> playerTrade(consumer, merchant, price));
+    }
+
+    @Override
+    public TransactionResult playerTrade(String idempotencyKey, UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        return idempotencyCache.execute(checkIdempotencyKey(idempotencyKey), () -> playerTrade(consumer, merchant, price, feeRate, feeMin, feeMax, serviceFeePreference));
+    }
+
+    private static String checkIdempotencyKey(String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty() || idempotencyKey.length() > 255) {
+            throw new IllegalArgumentException("Idempotency key must be 1 to 255 characters long.");
+        }
+        return idempotencyKey;
+    }
+
+    private TransactionResult trade(UUID consumer, UUID merchant, double price, double feeRate, double feeMin, double feeMax, ServiceFeePreference serviceFeePreference) {
+        var start = metrics.start();
+        var upstreamCalls = metrics.upstreamCallsOnThread();
+        var receipt = tradeWithFeeRate(consumer, merchant, price, feeRate, feeMin, feeMax, serviceFeePreference);
+        metrics.recordTransaction(EconomyMetrics.Operation.PLAYER_TRADE, start, upstreamCalls, receipt.status());
+        auditLog.record(AuditLog.Channel.TRADE, consumer, price, receipt);
         return receipt;
     }
 
+    @Override
+    public List<TransactionResult> playerTradeBatch(List<TradeRequest> trades) {
+        if (trades.isEmpty()) {
+            return List.of();
+        }
+        if (!admitPlugin()) {
+            return Collections.nCopies(trades.size(), RATE_LIMITED);
+        }
+        var start = metrics.start();
+        var accounts = new LinkedHashSet<UUID>();
+        var payers = new HashSet<UUID>();
+        var limitedPayers = new HashSet<UUID>();
+        for (var trade : trades) {
+            // every payer spends one token for the whole batch, even if it has been paid earlier in it
+            if (payers.add(trade.payer()) && !admitAccount(trade.payer())) {
+                limitedPayers.add(trade.payer());
+            }
+            accounts.add(trade.payer());
+            accounts.add(trade.receiver());
+        }
+        var results = new TransactionResult[trades.size()];
+        for (int i = 0; i < results.length; i++) {
+            var trade = trades.get(i);
+            if (limitedPayers.contains(trade.payer())) {
+                results[i] = RATE_LIMITED;
+            } else if (!events.firePre(trade.payer(), List.of(trade.receiver()), trade.amount(), trade.feeRate(), trade.serviceFeePreference())) {
+                results[i] = CANCELLED;
+            }
+        }
+        var locked = accountLocks.lock(trades.get(0).payer(), accounts);
+        systemVaultLock.readLock().lock();
+        try {
+            settleNetted(trades, results);
+        } finally {
+            systemVaultLock.readLock().unlock();
+            locked.unlock();
+            metrics.record(EconomyMetrics.Operation.PLAYER_TRADE_BATCH, start);
+        }
+        for (var result : results) {
+            events.firePost(result);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * net a batch of trades into one upstream call per account and one system vault credit, holding every involved lock.
+     *
+     * @param results the result of every trade, filled in for those not settled yet
+     */
+    private void settleNetted(List<TradeRequest> trades, TransactionResult[] results) {
+        var count = trades.size();
+        var fees = new double[count];
+        var amountsNeed = new double[count];
+        var amountsArrive = new double[count];
+        var availableBalances = new HashMap<UUID, Double>();
+        for (int i = 0; i < count; i++) {
+            var trade = trades.get(i);
+            if (results[i] != null) {
+                continue;
+            }
+            fees[i] = trade.amount() * trade.feeRate();
+            amountsNeed[i] = switch (trade.serviceFeePreference()) {
+                case INTERNAL -> trade.amount();
+                case ADDITIONAL -> trade.amount() + fees[i];
+            };
+            amountsArrive[i] = switch (trade.serviceFeePreference()) {
+                case INTERNAL -> trade.amount() - fees[i];
+                case ADDITIONAL -> trade.amount();
+            };
+            availableBalances.computeIfAbsent(trade.payer(), this::getAvailableBalance);
+        }
+
+        // reject every trade of a payer who can not cover its net position, until all remaining positions are covered
+        var netDeltas = new LinkedHashMap<UUID, Double>();
+        var rejected = true;
+        while (rejected) {
+            rejected = false;
+            netDeltas.clear();
+            for (int i = 0; i < count; i++) {
+                if (results[i] == null) {
+                    netDeltas.merge(trades.get(i).payer(), -amountsNeed[i], Double::sum);
+                    netDeltas.merge(trades.get(i).receiver(), amountsArrive[i], Double::sum);
+                }
+            }
+            for (var netDelta : netDeltas.entrySet()) {
+                var balance = availableBalances.get(netDelta.getKey());
+                if (balance == null || balance + netDelta.getValue() >= 0) {
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    if (results[i] == null && trades.get(i).payer().equals(netDelta.getKey())) {
+                        results[i] = TransactionResultInternal.failure(TransactionStatus.INSUFFICIENT_BALANCE);
+                        auditLog.record(AuditLog.Channel.TRADE, trades.get(i).payer(), trades.get(i).amount(), results[i]);
+                        rejected = true;
+                    }
+                }
+            }
+        }
+        var feeTotally = 0.0;
+        for (int i = 0; i < count; i++) {
+            if (results[i] == null) {
+                feeTotally += fees[i];
+            }
+        }
+
+        //step 0: withdraw every net payer, step 1: credit all fees, step 2: deposit every net receiver
+        var withdrawn = new ArrayList<UUID>();
+        var deposited = new ArrayList<UUID>();
+        var feeCredited = false;
+        var failed = false;
+        for (var netDelta : netDeltas.entrySet()) {
+            if (netDelta.getValue() < 0) {
+                if (!withdrawPlayerAdmitted(netDelta.getKey(), -netDelta.getValue())) {
+                    failed = true;
+                    break;
+                }
+                withdrawn.add(netDelta.getKey());
+            }
+        }
+        if (!failed && feeTotally != 0) {
+            failed = !depositSystemVaultUnlocked(feeTotally);
+            feeCredited = !failed;
+        }
+        if (!failed) {
+            for (var netDelta : netDeltas.entrySet()) {
+                if (netDelta.getValue() > 0) {
+                    if (!depositPlayerAdmitted(netDelta.getKey(), netDelta.getValue())) {
+                        failed = true;
+                        break;
+                    }
+                    deposited.add(netDelta.getKey());
+                }
+            }
+        }
+
+        if (failed) {
+            metrics.recordRollback();
+            for (var vault : deposited) {
+                var credit = netDeltas.get(vault);
+                rollback(() -> withdrawPlayerAdmitted(vault, credit), "withdraw " + credit + " from " + vault);
+            }
+            if (feeCredited) {
+                var fee = feeTotally;
+                rollback(() -> withdrawSystemVaultUnlocked(fee), "withdraw " + fee + " from system vault");
+            }
+            for (var vault : withdrawn) {
+                var debit = -netDeltas.get(vault);
+                rollback(() -> depositPlayerAdmitted(vault, debit), "deposit " + debit + " to " + vault);
+            }
+            // settle every remaining trade on its own, the locks are reentrant
+            for (int i = 0; i < count; i++) {
+                if (results[i] == null) {
+                    var trade = trades.get(i);
+                    results[i] = trade(trade.payer(), trade.receiver(), trade.amount(), trade.feeRate(), 0, Double.MAX_VALUE, trade.serviceFeePreference());
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (results[i] == null) {
+                var trade = trades.get(i);
+                var payerRemain = availableBalances.get(trade.payer()) + netDeltas.get(trade.payer());
+                var id = receiptIds.next();
+                results[i] = success(new ReceiptInternal(trade.payer(), trade.receiver(), trade.amount(), amountsArrive[i], fees[i], trade.feeRate(), payerRemain, trade.serviceFeePreference(), id, ReceiptIdGenerator.timestampOf(id)));
+                auditLog.record(AuditLog.Channel.TRADE, trade.payer(), trade.amount(), results[i]);
+            }
+        }
+    }
+
     @Override
     public boolean depositPlayer(UUID vault, double amount) {
-        var player = Bukkit.getOfflinePlayer(vault);
-        createPlayerBankAccountIfNotExist(player);
+        return admit(vault) && depositPlayerAdmitted(vault, amount);
+    }
+
+    private boolean depositPlayerAdmitted(UUID vault, double amount) {
+        var start = metrics.start();
+        var locked = accountLocks.lock(vault);
+        try {
+            return depositPlayerUpstream(vault, amount);
+        } finally {
+            locked.unlock();
+            metrics.record(EconomyMetrics.Operation.DEPOSIT_PLAYER, start);
+        }
+    }
+
+    private boolean depositPlayerUpstream(UUID vault, double amount) {
+        if (balanceCache != null) {
+            if (!balanceCache.deposit(vault, amount)) {
+                return false;
+            }
+            indexBalance(vault, balanceCache.getBalance(vault));
+            return true;
+        }
+        var player = accountResolver.resolve(vault);
         var withdrawResult = economy.depositPlayer(player, amount);
-        return withdrawResult.type == EconomyResponse.ResponseType.SUCCESS;
+        if (withdrawResult.type != EconomyResponse.ResponseType.SUCCESS) {
+            accountResolver.invalidate(vault);
+            return false;
+        }
+        indexBalance(vault, withdrawResult.balance);
+        return true;
     }
 
     @Override
     public boolean withdrawPlayer(UUID vault, double amount) {
-        var player = Bukkit.getOfflinePlayer(vault);
-        createPlayerBankAccountIfNotExist(player);
+        return admit(vault) && withdrawPlayerAdmitted(vault, amount);
+    }
+
+    private boolean withdrawPlayerAdmitted(UUID vault, double amount) {
+        var start = metrics.start();
+        var locked = accountLocks.lock(vault);
+        try {
+            var heldAmount = holds.held(vault, System.currentTimeMillis());
+            if (heldAmount > 0 && getPlayerBalance(vault) - heldAmount < amount) {
+                return false;
+            }
+            return withdrawPlayerUpstream(vault, amount);
+        } finally {
+            locked.unlock();
+            metrics.record(EconomyMetrics.Operation.WITHDRAW_PLAYER, start);
+        }
+    }
+
+    private boolean withdrawPlayerUpstream(UUID vault, double amount) {
+        if (balanceCache != null) {
+            if (!balanceCache.withdraw(vault, amount)) {
+                return false;
+            }
+            indexBalance(vault, balanceCache.getBalance(vault));
+            return true;
+        }
+        var player = accountResolver.resolve(vault);
         var withdrawResult = economy.withdrawPlayer(player, amount);
-        return withdrawResult.type == EconomyResponse.ResponseType.SUCCESS;
+        if (withdrawResult.type != EconomyResponse.ResponseType.SUCCESS) {
+            accountResolver.invalidate(vault);
+            return false;
+        }
+        indexBalance(vault, withdrawResult.balance);
+        return true;
     }
 
     @Override
     public boolean setPlayerBalance(UUID vault, double amount) {
-        var player = Bukkit.getOfflinePlayer(vault);
-        createPlayerBankAccountIfNotExist(player);
-        var distance = amount - getPlayerBalance(vault);
-        if (distance > 0) {
-            return depositPlayer(vault, distance);
-        } else {
-            return withdrawPlayer(vault, -distance);
+        if (!admit(vault)) {
+            return false;
+        }
+        var start = metrics.start();
+        var locked = accountLocks.lock(vault);
+        try {
+            var distance = amount - getPlayerBalance(vault);
+            if (distance > 0) {
+                return depositPlayerAdmitted(vault, distance);
+            } else {
+                return withdrawPlayerAdmitted(vault, -distance);
+            }
+        } finally {
+            locked.unlock();
+            metrics.record(EconomyMetrics.Operation.SET_PLAYER_BALANCE, start);
         }
     }
 
     @Override
     public boolean withdrawSystemVault(double amount) {
-        if (isInternalVaultEnabled) {
-            if (internalVaultBalance < amount) {
-                return false;
+        systemVaultLock.writeLock().lock();
+        try {
+            return withdrawSystemVaultUnlocked(amount);
+        } finally {
+            systemVaultLock.writeLock().unlock();
+        }
+    }
+
+    private boolean withdrawSystemVaultUnlocked(double amount) {
+        var start = metrics.start();
+        try {
+            if (isInternalVaultEnabled) {
+                var minor = internalVault.toMinor(amount);
+                if (journal != null) {
+                    return journal.appendIf(() -> internalVault.withdraw(minor), JOURNAL_SYSTEM_WITHDRAW, minor, 0, 0);
+                }
+                return internalVault.withdraw(minor);
+            } else if (jdbcVault != null) {
+                // commit queued fee credits first, they may be what covers this withdrawal
+                jdbcVault.flush();
+                return jdbcVault.change(JDBC_SYSTEM_ACCOUNT, -Math.round(amount * jdbcVaultScale), 0) != null;
             } else {
-                internalVaultBalance -= amount;
-                return true;
+                return economy.withdrawPlayer(vaultPlayer, amount).type == EconomyResponse.ResponseType.SUCCESS;
             }
-        } else {
-            return economy.withdrawPlayer(vaultPlayer, amount).type == EconomyResponse.ResponseType.SUCCESS;
+        } catch (SQLException e) {
+            pluginInstance.getLogger().log(Level.WARNING, "Failed to withdraw " + amount + " from system vault", e);
+            return false;
+        } finally {
+            metrics.record(EconomyMetrics.Operation.WITHDRAW_SYSTEM_VAULT, start);
         }
     }
 
     @Override
     public boolean depositSystemVault(double amount) {
-        if (isInternalVaultEnabled) {
-            internalVaultBalance += amount;
-            return true;
-        } else {
-            return economy.depositPlayer(vaultPlayer, amount).type == EconomyResponse.ResponseType.SUCCESS;
+        systemVaultLock.readLock().lock();
+        try {
+            return depositSystemVaultUnlocked(amount);
+        } finally {
+            systemVaultLock.readLock().unlock();
+        }
+    }
+
+    private boolean depositSystemVaultUnlocked(double amount) {
+        var start = metrics.start();
+        try {
+            if (isInternalVaultEnabled) {
+                var minor = internalVault.toMinor(amount);
+                if (journal != null) {
+                    return journal.appendIf(() -> {
+                        internalVault.deposit(minor);
+                        return true;
+                    }, JOURNAL_SYSTEM_DEPOSIT, minor, 0, 0);
+                }
+                internalVault.deposit(minor);
+                return true;
+            } else if (jdbcVault != null) {
+                jdbcVault.depositLater(JDBC_SYSTEM_ACCOUNT, Math.round(amount * jdbcVaultScale));
+                return true;
+            } else {
+                return economy.depositPlayer(vaultPlayer, amount).type == EconomyResponse.ResponseType.SUCCESS;
+            }
+        } finally {
+            metrics.record(EconomyMetrics.Operation.DEPOSIT_SYSTEM_VAULT, start);
         }
     }
 
     @Override
     public double getPlayerBalance(UUID vault) {
-        var player = Bukkit.getOfflinePlayer(vault);
-        createPlayerBankAccountIfNotExist(player);
-        return economy.getBalance(player);
+        var start = metrics.start();
+        try {
+            // reads refresh the leaderboard too, catching up with changes made upstream without ECore
+            var balance = balanceCache != null ? balanceCache.getBalance(vault) : economy.getBalance(accountResolver.resolve(vault));
+            indexBalance(vault, balance);
+            return balance;
+        } finally {
+            metrics.record(EconomyMetrics.Operation.GET_PLAYER_BALANCE, start);
+        }
     }
 
     @Override
     public boolean setSystemBalance(double amount) {
-        if (isInternalVaultEnabled) {
-            internalVaultBalance = amount;
-            return true;
-        } else {
-            return setPlayerBalance(vaultPlayer.getUniqueId(), amount);
+        var start = metrics.start();
+        systemVaultLock.writeLock().lock();
+        try {
+            if (isInternalVaultEnabled) {
+                var minor = internalVault.toMinor(amount);
+                if (journal != null) {
+                    return journal.appendIf(() -> {
+                        internalVault.set(minor);
+                        return true;
+                    }, JOURNAL_SYSTEM_SET, minor, 0, 0);
+                }
+                internalVault.set(minor);
+                return true;
+            } else if (jdbcVault != null) {
+                jdbcVault.flush();
+                jdbcVault.set(JDBC_SYSTEM_ACCOUNT, Math.round(amount * jdbcVaultScale));
+                return true;
+            } else {
+                // bypass the balance cache, the system account is always accessed upstream
+                var distance = amount - economy.getBalance(vaultPlayer);
+                var response = distance > 0 ? economy.depositPlayer(vaultPlayer, distance) : economy.withdrawPlayer(vaultPlayer, -distance);
+                return response.type == EconomyResponse.ResponseType.SUCCESS;
+            }
+        } catch (SQLException e) {
+            pluginInstance.getLogger().log(Level.WARNING, "Failed to set system vault balance to " + amount, e);
+            return false;
+        } finally {
+            systemVaultLock.writeLock().unlock();
+            metrics.record(EconomyMetrics.Operation.SET_SYSTEM_BALANCE, start);
         }
     }
 
     @Override
     public double getSystemBalance() {
-        if (isInternalVaultEnabled) {
-            return internalVaultBalance;
-        } else {
-            return economy.getBalance(vaultPlayer);
+        var start = metrics.start();
+        try {
+            if (isInternalVaultEnabled) {
+                return internalVault.toMajor(internalVault.balance());
+            } else if (jdbcVault != null) {
+                return jdbcVault.balance(JDBC_SYSTEM_ACCOUNT, 0) / jdbcVaultScale;
+            } else {
+                return economy.getBalance(vaultPlayer);
+            }
+        } catch (SQLException e) {
+            // a database outage must not look like an empty vault
+            throw new IllegalStateException("Failed to read system vault balance", e);
+        } finally {
+            metrics.record(EconomyMetrics.Operation.GET_SYSTEM_BALANCE, start);
         }
     }
 
     @Override
-    public double getTransferFeeRate() {
-        return config.serviceFee.transferFee;
+    public double getAvailableBalance(UUID vault) {
+        var heldAmount = holds.held(vault, System.currentTimeMillis());
+        return heldAmount > 0 ? getPlayerBalance(vault) - heldAmount : getPlayerBalance(vault);
     }
 
     @Override
-    public double getTradeFeeRate() {
-        return config.serviceFee.tradeFee;
+    public HoldId hold(UUID vault, double amount) {
+        return hold(vault, amount, TimeUnit.SECONDS.toMillis(config.hold.defaultDurationInSeconds));
     }
 
     @Override
-    public String currencyNameSingular() {
-        return economy.currencyNameSingular();
+    public HoldId hold(UUID vault, double amount, long durationMillis) {
+        if (!(amount > 0) || Double.isInfinite(amount) || durationMillis <= 0 || !admit(vault)) {
+            return null;
+        }
+        var locked = accountLocks.lock(vault);
+        try {
+            if (getAvailableBalance(vault) < amount) {
+                return null;
+            }
+            return holds.add(vault, amount, System.currentTimeMillis() + durationMillis);
+        } finally {
+            locked.unlock();
+        }
     }
 
     @Override
-    public String currencyNamePlural() {
-        return economy.currencyNamePlural();
+    public TransactionResult capture(HoldId holdId, UUID merchant) {
+        return capture(holdId, merchant, config.serviceFee.tradeFee);
     }
 
     @Override
-    public String systemVaultName() {
-        return config.vault.friendlyName;
-    }
-
-    private void createPlayerBankAccountIfNotExist(OfflinePlayer player) {
+    public TransactionResult capture(HoldId holdId, UUID merchant, double feeRate) {
+        if (!admit(holdId.vault())) {
+            return RATE_LIMITED;
+        }
+        var pending = holds.get(holdId, System.currentTimeMillis());
+        if (pending == null) {
+            return TransactionResultInternal.failure(TransactionStatus.HOLD_NOT_FOUND);
+        }
+        if (!events.firePre(holdId.vault(), List.of(merchant), pending.amount(), feeRate, ServiceFeePreference.INTERNAL)) {
+            return CANCELLED;
+        }
+        TransactionResult result;
+        // lock both accounts up front, in the same order the trade itself does
+        var locked = accountLocks.lock(holdId.vault(), List.of(merchant));
         try {
-            //if possible
-            if (!economy.hasAccount(player)) {
-                economy.createPlayerAccount(player);
+            var hold = holds.remove(holdId, System.currentTimeMillis());
+            if (hold == null) {
+                return TransactionResultInternal.failure(TransactionStatus.HOLD_NOT_FOUND);
+            }
+            result = trade(holdId.vault(), merchant, hold.amount(), feeRate, 0, Double.MAX_VALUE, ServiceFeePreference.INTERNAL);
+            if (!result.isSuccess()) {
+                holds.restore(hold);
             }
-        } catch (Exception ignored) {
+        } finally {
+            locked.unlock();
         }
+        events.firePost(result);
+        return result;
     }
 
+    @Override
+    public BalanceExport exportBalances(File file, ExportFormat format) {
+        var systemBalance = getSystemBalance();
+        if (upstream instanceof NativeLedger ledger && balanceCache == null) {
+            // a copy taken under the ledger lock is consistent across all accounts, and written out off the main thread
+            var snapshot = ledger.snapshot();
+            var export = new BalanceExporter(file, format, systemBalance, snapshot.size());
+            export.startAsync(pluginInstance, accounts -> snapshot.forEach((msb, lsb, value) -> {
+                var vault = new UUID(msb, lsb);
+                accounts.accept(vault, isRanked(vault) ? ledger.toMajor(value) : Double.NaN);
+            }));
+            return export;
+        }
+        var players = Bukkit.getOfflinePlayers();
+        var export = new BalanceExporter(file, format, systemBalance, players.length);
+        ToDoubleFunction<OfflinePlayer> balanceOf = player -> isRanked(player.getUniqueId()) && economy.hasAccount(player)
+                ? getPlayerBalance(player.getUniqueId()) : Double.NaN;
+        if (upstream instanceof LedgerEconomy) {
+            export.startAsync(pluginInstance, accounts -> {
+                for (var player : players) {
+                    accounts.accept(player.getUniqueId(), balanceOf.applyAsDouble(player));
+                }
+            });
+        } else {
+            export.startOnMainThread(pluginInstance, players, balanceOf, TimeUnit.MILLISECONDS.toNanos(config.export.tickBudgetInMillis));
+        }
+        return export;
+    }
 
-}
-
-record TransactionResultInternal(TransactionStatus transactionStatus, Receipt receipt) implements TransactionResult {
     @Override
-    public TransactionStatus status() {
-        return transactionStatus;
+    public void registerReceiptListener(ReceiptListener listener) {
+        events.register(listener);
     }
 
     @Override
-    public boolean isSuccess() {
-        return transactionStatus == TransactionStatus.SUCCESS;
+    public void unregisterReceiptListener(ReceiptListener listener) {
+        events.unregister(listener);
     }
 
     @Override
-    public Receipt getReceipt() {
-        return receipt;
+    public boolean release(HoldId holdId) {
+        var locked = accountLocks.lock(holdId.vault());
+        try {
+            return holds.remove(holdId, System.currentTimeMillis()) != null;
+        } finally {
+            locked.unlock();
+        }
     }
-}
 
-record ReceiptInternal(UUID payer, List<UUID> receivers, double amount, double arrivalAmount,
-                       double fee,
-                       double feeRate, double payerRemain, ServiceFeePreference serviceFeePreference,
-                       long receiptId) implements Receipt {
+    /**
+     * take a token for the calling plugin and one for the account starting an operation.
+     *
+     * @return false if either is over its rate limit
+     */
+    private boolean admit(UUID account) {
+        return admitPlugin() && admitAccount(account);
+    }
 
-    @Override
-    public UUID getPayer() {
-        return payer;
+    private boolean admitPlugin() {
+        if (pluginLimits == null) {
+            return true;
+        }
+        var plugin = CallingPlugin.find();
+        if (plugin == null || pluginLimits.tryAcquire(plugin)) {
+            return true;
+        }
+        metrics.increment("rate_limited_plugin");
+        return false;
+    }
+
+    private boolean admitAccount(UUID account) {
+        if (accountLimits == null || accountLimits.tryAcquire(account)) {
+            return true;
+        }
+        metrics.increment("rate_limited_account");
+        return false;
     }
 
     @Override
-    public List<UUID> getReceiver() {
-        return receivers;
+    public Receipt getReceipt(long receiptId) {
+        return receiptStore == null ? null : receiptStore.get(receiptId);
     }
 
     @Override
-    public double getAmountArrivePerTransaction() {
-        return arrivalAmount;
+    public List<Receipt> getReceipts(UUID vault, long fromMillis, long toMillis, int offset, int limit) {
+        return receiptStore == null ? List.of() : receiptStore.query(vault, fromMillis, toMillis, offset, limit);
     }
 
     @Override
-    public double getAmountArriveTotally() {
-        return getAmountArrivePerTransaction() * receivers.size();
+    public List<LeaderboardEntry> getTopBalances(int limit) {
+        return leaderboard == null ? List.of() : leaderboard.top(limit);
     }
 
     @Override
-    public double getFeePerTransaction() {
-        return fee;
+    public int getBalanceRank(UUID vault) {
+        return leaderboard == null ? 0 : leaderboard.rank(vault);
     }
 
     @Override
-    public double getFeeTotally() {
-        return fee * receivers.size();
+    public EconomyStats getStats() {
+        return stats;
     }
 
     @Override
-    public double getAmountPerTransaction() {
-        return amount;
+    public double getTransferFeeRate() {
+        return config.serviceFee.transferFee;
     }
 
     @Override
-    public double getAmountTotally() {
-        return amount * receivers.size();
+    public double getTradeFeeRate() {
+        return config.serviceFee.tradeFee;
     }
 
     @Override
-    public double getFeeRate() {
-        return feeRate;
+    public String currencyNameSingular() {
+        return economy.currencyNameSingular();
     }
 
     @Override
-    public double getFeeRatePercent() {
-        return getFeeRate() * 100;
+    public String currencyNamePlural() {
+        return economy.currencyNamePlural();
     }
 
     @Override
-    public double getPayerRemain() {
-        return payerRemain;
+    public String systemVaultName() {
+        return config.vault.friendlyName;
+    }
+
+
+}
+
+/**
+ * result of a failed transaction, successful ones are their {@link ReceiptInternal}.
+ */
+record TransactionResultInternal(TransactionStatus transactionStatus) implements TransactionResult {
+    private static final TransactionResult[] FAILURES = Arrays.stream(TransactionStatus.values())
+            .map(TransactionResultInternal::new)
+            .toArray(TransactionResult[]::new);
+
+    /**
+     * @return the shared result of every transaction failed with this status
+     */
+    static TransactionResult failure(TransactionStatus status) {
+        return FAILURES[status.ordinal()];
     }
 
     @Override
-    public ServiceFeePreference getTaxPreference() {
-        return serviceFeePreference;
+    public TransactionStatus status() {
+        return transactionStatus;
     }
 
     @Override
-    public long getId() {
-        return receiptId;
+    public boolean isSuccess() {
+        return transactionStatus == TransactionStatus.SUCCESS;
     }
 
     @Override
-    public String toString() {
-        return "ReceiptInternal{" +
-                "payer=" + payer +
-                ", receivers=" + receivers.toString() +
-                ", amount=" + amount + "(" + getAmountTotally() + " totally)" +
-                ", arrivalAmount=" + arrivalAmount +
-                ", fee=" + fee + "(" + getFeeTotally() + " totally)" +
-                ", feeRate=" + feeRate +
-                ", payerRemain=" + payerRemain +
-                ", serviceFeePreference=" + serviceFeePreference +
-                ", receiptId=" + Long.toHexString(receiptId) +
-                '}';
+    public Receipt getReceipt() {
+        return null;
     }
 }
 
 class EcoreDataInternal {
     private double internalVaultBalance;
+    private long journalSeq;
 
-    public EcoreDataInternal(double internalVaultBalance) {
+    public EcoreDataInternal(double internalVaultBalance, long journalSeq) {
         this.internalVaultBalance = internalVaultBalance;
+        this.journalSeq = journalSeq;
     }
 
     public double getInternalVaultBalance() {
@@ -435,4 +1312,12 @@ class EcoreDataInternal {
     public void setInternalVaultBalance(double internalVaultBalance) {
         this.internalVaultBalance = internalVaultBalance;
     }
+
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    public void setJournalSeq(long journalSeq) {
+        this.journalSeq = journalSeq;
+    }
 }
@@ -0,0 +1,223 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.Economy;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms of economy core operations and of the upstream {@link Economy}.
+ * <p>When disabled, every recording method returns right away and the upstream economy is not wrapped.</p>
+ */
+class EconomyMetrics {
+    enum Operation {
+        PLAYER_TRANSFER,
+        PLAYER_TRADE,
+        PLAYER_TRADE_BATCH,
+        DEPOSIT_PLAYER,
+        WITHDRAW_PLAYER,
+        SET_PLAYER_BALANCE,
+        GET_PLAYER_BALANCE,
+        DEPOSIT_SYSTEM_VAULT,
+        WITHDRAW_SYSTEM_VAULT,
+        SET_SYSTEM_BALANCE,
+        GET_SYSTEM_BALANCE,
+        SCHEDULER_QUEUE_WAIT,
+        SCHEDULER_TICK,
+        AUTOSAVE;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final boolean enabled;
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<TransactionStatus, LongAdder> statuses = new EnumMap<>(TransactionStatus.class);
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Histogram upstreamLatency = new Histogram();
+    private final Histogram upstreamCallsPerTransaction = new Histogram();
+    private final LongAdder rollbacks = new LongAdder();
+    private final ThreadLocal<long[]> upstreamCallsOnThread = ThreadLocal.withInitial(() -> new long[1]);
+
+    EconomyMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (var operation : Operation.values()) {
+            latencies.put(operation, new Histogram());
+        }
+        for (var status : TransactionStatus.values()) {
+            statuses.put(status, new LongAdder());
+        }
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * wrap the upstream economy so that every call on it is counted and timed.
+     */
+    Economy instrument(Economy upstream) {
+        if (!enabled) {
+            return upstream;
+        }
+        return (Economy) Proxy.newProxyInstance(Economy.class.getClassLoader(), new Class<?>[]{Economy.class}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(upstream, args);
+            }
+            var start = System.nanoTime();
+            try {
+                return method.invoke(upstream, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                upstreamLatency.record(System.nanoTime() - start);
+                upstreamCallsOnThread.get()[0]++;
+            }
+        });
+    }
+
+    /**
+     * @return start timestamp to pass to the matching <code>record</code> call
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @return number of upstream calls made by the current thread so far
+     */
+    long upstreamCallsOnThread() {
+        return enabled ? upstreamCallsOnThread.get()[0] : 0;
+    }
+
+    void record(Operation operation, long start) {
+        if (enabled) {
+            latencies.get(operation).record(System.nanoTime() - start);
+        }
+    }
+
+    void recordTransaction(Operation operation, long start, long upstreamCallsBefore, TransactionStatus status) {
+        if (enabled) {
+            latencies.get(operation).record(System.nanoTime() - start);
+            statuses.get(status).increment();
+            upstreamCallsPerTransaction.record(upstreamCallsOnThread.get()[0] - upstreamCallsBefore);
+        }
+    }
+
+    void recordRollback() {
+        if (enabled) {
+            rollbacks.increment();
+        }
+    }
+
+    long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    /**
+     * count an event under a free-form name, e.g. a rate limit hit.
+     */
+    void increment(String counter) {
+        if (enabled) {
+            counters.computeIfAbsent(counter, name -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * report the current value of something under a name, e.g. a queue depth, read whenever metrics are shown.
+     */
+    void gauge(String name, LongSupplier value) {
+        if (enabled) {
+            gauges.put(name, value);
+        }
+    }
+
+    /**
+     * human readable summary, one line per metric.
+     */
+    List<String> summary() {
+        var lines = new ArrayList<String>();
+        if (!enabled) {
+            lines.add("Metrics are disabled, set metrics.enabled = true to collect them.");
+            return lines;
+        }
+        for (var entry : latencies.entrySet()) {
+            var histogram = entry.getValue();
+            if (histogram.getCount() > 0) {
+                lines.add(String.format(Locale.ROOT, "%s: %d calls, p50 %s, p99 %s, max %s", entry.getKey().label, histogram.getCount(),
+                        formatNanos(histogram.getValueAtQuantile(0.5)), formatNanos(histogram.getValueAtQuantile(0.99)), formatNanos(histogram.getMax())));
+            }
+        }
+        lines.add(String.format(Locale.ROOT, "upstream: %d calls, p50 %s, p99 %s, max %s", upstreamLatency.getCount(),
+                formatNanos(upstreamLatency.getValueAtQuantile(0.5)), formatNanos(upstreamLatency.getValueAtQuantile(0.99)), formatNanos(upstreamLatency.getMax())));
+        lines.add(String.format(Locale.ROOT, "upstream calls per transaction: p50 %d, p99 %d, max %d",
+                upstreamCallsPerTransaction.getValueAtQuantile(0.5), upstreamCallsPerTransaction.getValueAtQuantile(0.99), upstreamCallsPerTransaction.getMax()));
+        var statusLine = new StringBuilder("transactions:");
+        statuses.forEach((status, count) -> statusLine.append(' ').append(status).append('=').append(count.sum()));
+        lines.add(statusLine.toString());
+        lines.add("rollbacks: " + rollbacks.sum());
+        counters.forEach((name, count) -> lines.add(name + ": " + count.sum()));
+        gauges.forEach((name, value) -> lines.add(name + ": " + value.getAsLong()));
+        return lines;
+    }
+
+    /**
+     * write all metrics in Prometheus text exposition format, replacing the file atomically.
+     */
+    void writePrometheus(Path file) throws IOException {
+        var out = new StringBuilder(4096);
+        out.append("# TYPE ecore_operation_seconds summary\n");
+        for (var entry : latencies.entrySet()) {
+            appendSummary(out, "ecore_operation_seconds", "operation=\"" + entry.getKey().label + "\"", entry.getValue(), 1e-9);
+        }
+        out.append("# TYPE ecore_upstream_seconds summary\n");
+        appendSummary(out, "ecore_upstream_seconds", null, upstreamLatency, 1e-9);
+        out.append("# TYPE ecore_upstream_calls_per_transaction summary\n");
+        appendSummary(out, "ecore_upstream_calls_per_transaction", null, upstreamCallsPerTransaction, 1);
+        out.append("# TYPE ecore_transactions_total counter\n");
+        statuses.forEach((status, count) -> out.append("ecore_transactions_total{status=\"").append(status).append("\"} ").append(count.sum()).append('\n'));
+        out.append("# TYPE ecore_rollbacks_total counter\n");
+        out.append("ecore_rollbacks_total ").append(rollbacks.sum()).append('\n');
+        out.append("# TYPE ecore_events_total counter\n");
+        counters.forEach((name, count) -> out.append("ecore_events_total{event=\"").append(name).append("\"} ").append(count.sum()).append('\n'));
+        out.append("# TYPE ecore_gauge gauge\n");
+        gauges.forEach((name, value) -> out.append("ecore_gauge{name=\"").append(name).append("\"} ").append(value.getAsLong()).append('\n'));
+
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, out, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void appendSummary(StringBuilder out, String name, String labels, Histogram histogram, double unit) {
+        var prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtQuantile(quantile) * unit).append('\n');
+        }
+        var suffix = labels == null ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(histogram.getSum() * unit).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.2fms", nanos / 1e6);
+    }
+}
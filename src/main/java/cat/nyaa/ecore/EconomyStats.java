@@ -0,0 +1,47 @@
+package cat.nyaa.ecore;
+
+import java.util.List;
+
+/**
+ * Live statistics of the successful transactions settled by ECore since the server started.
+ * <p>Get it with {@link EconomyCore#getStats()}. All methods are cheap and thread-safe, and the memory used is
+ * constant however much traffic there is, so rolling windows are accurate to one bucket (a second for
+ * {@link StatsWindow#MINUTE}, a minute for {@link StatsWindow#HOUR} and a quarter of an hour for
+ * {@link StatsWindow#DAY}) and top accounts are approximate. Receipts are counted in the background, so statistics
+ * trail transactions by a few milliseconds.</p>
+ */
+public interface EconomyStats {
+    /**
+     * @return the number of successful transactions within the window
+     */
+    long getTransactionCount(StatsWindow window);
+
+    /**
+     * @return the total amount of the transactions within the window, see {@link Receipt#getAmountTotally()}
+     */
+    double getVolume(StatsWindow window);
+
+    /**
+     * @return the total service fee credited to the system vault within the window
+     */
+    double getFeeRevenue(StatsWindow window);
+
+    /**
+     * velocity of money, the volume within the window divided by the money held by players.
+     *
+     * @return the velocity, or NaN if the money supply is unknown because the leaderboard is disabled
+     */
+    double getVelocity(StatsWindow window);
+
+    /**
+     * @param limit maximum number of accounts to return
+     * @return the accounts which paid the most since the server started, highest volume first
+     */
+    List<HeavyHitter> getTopPayers(int limit);
+
+    /**
+     * @param limit maximum number of accounts to return
+     * @return the accounts which received the most since the server started, highest volume first
+     */
+    List<HeavyHitter> getTopMerchants(int limit);
+}
@@ -0,0 +1,92 @@
+package cat.nyaa.ecore;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * {@link EconomyStats} aggregated from every successful receipt.
+ * <p>Registered as a {@link ReceiptListener}, so receipts are counted on the dispatcher thread and the heavy hitter
+ * sketches are never touched by a transaction. Receipts dropped because listeners fell behind are not counted.</p>
+ */
+class EconomyStatsCollector implements EconomyStats, ReceiptListener {
+    private final boolean enabled;
+    private final Map<StatsWindow, RollingWindow> windows = new EnumMap<>(StatsWindow.class);
+    private final SpaceSaving payers;
+    private final SpaceSaving merchants;
+    private final DoubleSupplier moneySupply;
+
+    /**
+     * @param moneySupply money held by every player, NaN if unknown
+     */
+    EconomyStatsCollector(boolean enabled, int topAccounts, DoubleSupplier moneySupply) {
+        this.enabled = enabled;
+        this.moneySupply = moneySupply;
+        windows.put(StatsWindow.MINUTE, new RollingWindow(TimeUnit.SECONDS.toMillis(1), 60));
+        windows.put(StatsWindow.HOUR, new RollingWindow(TimeUnit.MINUTES.toMillis(1), 60));
+        windows.put(StatsWindow.DAY, new RollingWindow(TimeUnit.MINUTES.toMillis(15), 96));
+        payers = new SpaceSaving(topAccounts);
+        merchants = new SpaceSaving(topAccounts);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void onReceipts(List<Receipt> receipts) {
+        for (var receipt : receipts) {
+            record(receipt);
+        }
+    }
+
+    void record(Receipt receipt) {
+        if (!enabled) {
+            return;
+        }
+        var volume = receipt.getAmountTotally();
+        for (var window : windows.values()) {
+            window.record(receipt.getTimestamp(), volume, receipt.getFeeTotally());
+        }
+        payers.add(receipt.getPayer(), volume);
+        for (var receiver : receipt.getReceiver()) {
+            merchants.add(receiver, receipt.getAmountArrivePerTransaction());
+        }
+    }
+
+    private RollingWindow.Totals totals(StatsWindow window) {
+        return windows.get(window).totals(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getTransactionCount(StatsWindow window) {
+        return totals(window).count();
+    }
+
+    @Override
+    public double getVolume(StatsWindow window) {
+        return totals(window).volume();
+    }
+
+    @Override
+    public double getFeeRevenue(StatsWindow window) {
+        return totals(window).fees();
+    }
+
+    @Override
+    public double getVelocity(StatsWindow window) {
+        return totals(window).volume() / moneySupply.getAsDouble();
+    }
+
+    @Override
+    public List<HeavyHitter> getTopPayers(int limit) {
+        return payers.top(limit);
+    }
+
+    @Override
+    public List<HeavyHitter> getTopMerchants(int limit) {
+        return merchants.top(limit);
+    }
+}
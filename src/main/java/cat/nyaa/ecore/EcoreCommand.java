@@ -0,0 +1,119 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Admin command <code>/ecore</code>.
+ */
+public class EcoreCommand implements TabExecutor {
+    private static final List<String> SUBCOMMANDS = List.of("export", "metrics", "ratelimits", "stats");
+    private static final int TOP_LIMITED = 10;
+    private static final int TOP_ACCOUNTS = 5;
+    private static final DateTimeFormatter EXPORT_FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+
+    private final Supplier<EconomyCoreProvider> providerSupplier;
+    private BalanceExport export = null;
+
+    public EcoreCommand(Supplier<EconomyCoreProvider> providerSupplier) {
+        this.providerSupplier = providerSupplier;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            sender.sendMessage("Usage: /" + label + " <" + String.join("|", SUBCOMMANDS) + ">");
+            return true;
+        }
+        var provider = providerSupplier.get();
+        if (provider == null) {
+            sender.sendMessage("ECore is not ready yet, no economy provider found.");
+            return true;
+        }
+        switch (args[0]) {
+            case "metrics" -> {
+                provider.getMetrics().summary().forEach(sender::sendMessage);
+                sender.sendMessage("audit entries dropped: " + provider.getAuditLog().getDropped());
+            }
+            case "ratelimits" -> {
+                if (provider.getAccountLimits() == null && provider.getPluginLimits() == null) {
+                    sender.sendMessage("Rate limiting is disabled.");
+                    return true;
+                }
+                sendRateLimits(sender, "account", provider.getAccountLimits());
+                sendRateLimits(sender, "plugin", provider.getPluginLimits());
+            }
+            case "stats" -> {
+                var stats = provider.getStats();
+                for (var window : StatsWindow.values()) {
+                    sender.sendMessage(String.format(Locale.ROOT, "%s: %d transactions, volume %.2f, fees %.2f, velocity %.4f",
+                            window.name().toLowerCase(Locale.ROOT), stats.getTransactionCount(window), stats.getVolume(window),
+                            stats.getFeeRevenue(window), stats.getVelocity(window)));
+                }
+                sender.sendMessage("top payers:");
+                stats.getTopPayers(TOP_ACCOUNTS).forEach(hitter -> sendHeavyHitter(sender, hitter));
+                sender.sendMessage("top merchants:");
+                stats.getTopMerchants(TOP_ACCOUNTS).forEach(hitter -> sendHeavyHitter(sender, hitter));
+            }
+            case "export" -> export(sender, provider, args.length > 1 ? args[1] : "binary");
+            default -> sender.sendMessage("Unknown subcommand: " + args[0]);
+        }
+        return true;
+    }
+
+    private void export(CommandSender sender, EconomyCoreProvider provider, String formatName) {
+        if (export != null && !export.isDone()) {
+            sender.sendMessage(String.format(Locale.ROOT, "Export to %s running: %d/%d accounts.", export.getFile().getName(), export.getProgress(), export.getTotal()));
+            return;
+        }
+        ExportFormat format;
+        try {
+            format = ExportFormat.valueOf(formatName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage("Unknown export format: " + formatName + ", use binary or csv.");
+            return;
+        }
+        var name = "balances-" + LocalDateTime.now().format(EXPORT_FILE_TIME) + (format == ExportFormat.BINARY ? ".bin.gz" : ".csv");
+        export = provider.exportBalances(new File(new File(provider.getDataFolder(), "exports"), name), format);
+        sender.sendMessage("Exporting " + export.getTotal() + " accounts to " + name + ", run this command again for progress.");
+        export.getCompletion().whenComplete((accounts, e) -> {
+            if (e != null) {
+                sender.sendMessage("Export to " + name + " failed: " + e.getMessage());
+            } else {
+                sender.sendMessage("Exported " + accounts + " accounts to " + name + ".");
+            }
+        });
+    }
+
+    private static void sendHeavyHitter(CommandSender sender, HeavyHitter hitter) {
+        sender.sendMessage(String.format(Locale.ROOT, "  %s: %.2f (+/- %.2f)", hitter.vault(), hitter.volume(), hitter.error()));
+    }
+
+    private static void sendRateLimits(CommandSender sender, String kind, TokenBuckets<?> limits) {
+        if (limits == null) {
+            return;
+        }
+        sender.sendMessage(kind + " limits: " + limits.getLimited() + " rejected, " + limits.size() + " active buckets");
+        limits.topLimited(TOP_LIMITED).forEach(entry -> sender.sendMessage("  " + entry.getKey() + ": " + entry.getValue()));
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 1) {
+            return SUBCOMMANDS.stream().filter(subcommand -> subcommand.startsWith(args[0])).toList();
+        }
+        if (args.length == 2 && args[0].equals("export")) {
+            return Stream.of("binary", "csv").filter(format -> format.startsWith(args[1])).toList();
+        }
+        return List.of();
+    }
+}
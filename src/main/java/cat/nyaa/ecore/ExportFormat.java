@@ -0,0 +1,21 @@
+package cat.nyaa.ecore;
+
+/**
+ * file format of {@link EconomyCore#exportBalances(java.io.File, ExportFormat)}.
+ */
+public enum ExportFormat {
+    /**
+     * gzip compressed binary, all numbers big-endian:
+     * <pre>
+     *      header:  int magic 0x45434558 ("ECEX"), int version 1, long startMillis, double systemBalance
+     *      chunk:   int count, then count times (long uuidMost, long uuidLeast, double balance)
+     *      trailer: int 0, long endMillis, long accounts
+     * </pre>
+     */
+    BINARY,
+    /**
+     * plain text, one <code>account,balance</code> line per account after a header line, the system vault first
+     * as account <code>system</code>.
+     */
+    CSV
+}
@@ -0,0 +1,13 @@
+package cat.nyaa.ecore;
+
+import java.util.UUID;
+
+/**
+ * an account among the most active ones, see {@link EconomyStats#getTopPayers(int)}.
+ *
+ * @param vault  the account
+ * @param volume approximate amount paid or received, never underestimated
+ * @param error  maximum overestimation of <code>volume</code>, 0 if exact
+ */
+public record HeavyHitter(UUID vault, double volume, double error) {
+}
@@ -0,0 +1,12 @@
+package cat.nyaa.ecore;
+
+import java.util.UUID;
+
+/**
+ * handle of funds reserved by {@link EconomyCore#hold(UUID, double)}.
+ *
+ * @param vault the account the funds are held on
+ * @param id    unique id of the hold, valid until the server stops
+ */
+public record HoldId(UUID vault, long id) {
+}
@@ -0,0 +1,97 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * In-memory table of funds reserved on accounts, each reservation expiring at a fixed time.
+ * <p>Held funds stay in the upstream account; they are only subtracted from the balance available to other
+ * spends. Expired holds are ignored right away and dropped on the next access or {@link #sweep(long)}.</p>
+ */
+class HoldTable {
+    record Hold(HoldId id, double amount, long expiresAtMillis) {
+    }
+
+    private final HashMap<Long, Hold> holds = new HashMap<>();
+    private final HashMap<UUID, ArrayList<Hold>> holdsByVault = new HashMap<>();
+    private long nextId = 1;
+
+    synchronized HoldId add(UUID vault, double amount, long expiresAtMillis) {
+        var hold = new Hold(new HoldId(vault, nextId++), amount, expiresAtMillis);
+        put(hold);
+        return hold.id();
+    }
+
+    private void put(Hold hold) {
+        holds.put(hold.id().id(), hold);
+        holdsByVault.computeIfAbsent(hold.id().vault(), vault -> new ArrayList<>(2)).add(hold);
+    }
+
+    /**
+     * @return total amount held on the account and not expired yet
+     */
+    synchronized double held(UUID vault, long nowMillis) {
+        var vaultHolds = holdsByVault.get(vault);
+        if (vaultHolds == null) {
+            return 0;
+        }
+        var total = 0.0;
+        for (var iterator = vaultHolds.iterator(); iterator.hasNext(); ) {
+            var hold = iterator.next();
+            if (hold.expiresAtMillis() <= nowMillis) {
+                iterator.remove();
+                holds.remove(hold.id().id());
+            } else {
+                total += hold.amount();
+            }
+        }
+        if (vaultHolds.isEmpty()) {
+            holdsByVault.remove(vault);
+        }
+        return total;
+    }
+
+    /**
+     * @return the hold, or null if it does not exist or has expired
+     */
+    synchronized Hold get(HoldId id, long nowMillis) {
+        var hold = holds.get(id.id());
+        return hold != null && hold.id().equals(id) && hold.expiresAtMillis() > nowMillis ? hold : null;
+    }
+
+    /**
+     * remove a hold.
+     *
+     * @return the removed hold, or null if it does not exist or has expired
+     */
+    synchronized Hold remove(HoldId id, long nowMillis) {
+        var hold = holds.get(id.id());
+        if (hold == null || !hold.id().equals(id)) {
+            return null;
+        }
+        holds.remove(id.id());
+        var vaultHolds = holdsByVault.get(id.vault());
+        vaultHolds.remove(hold);
+        if (vaultHolds.isEmpty()) {
+            holdsByVault.remove(id.vault());
+        }
+        return hold.expiresAtMillis() > nowMillis ? hold : null;
+    }
+
+    /**
+     * put back a hold removed by {@link #remove(HoldId, long)}, e.g. when settling it failed.
+     */
+    synchronized void restore(Hold hold) {
+        put(hold);
+    }
+
+    /**
+     * drop every expired hold.
+     */
+    synchronized void sweep(long nowMillis) {
+        for (var vault : new ArrayList<>(holdsByVault.keySet())) {
+            held(vault, nowMillis);
+        }
+    }
+}
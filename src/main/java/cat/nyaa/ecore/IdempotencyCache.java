@@ -0,0 +1,223 @@
+package cat.nyaa.ecore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the result of every successful transaction made with an idempotency key, so a retry with the same key
+ * returns the original result instead of moving money again.
+ * <p>A key maps to a future, so a retry racing the first attempt waits for its outcome. Failed transactions are
+ * rolled back and forgotten, a retry runs them again. Every entry lives for the same time, so insertion order is
+ * expiry order and a queue of entries is enough to drop expired ones and, over capacity, the oldest ones.</p>
+ *
+ * <p>If a file is given, successful results are appended to it and loaded again on start, so a retry after a
+ * restart is still recognized. The file is compacted to the live entries when it is loaded, and by
+ * {@link #compact()} once expired or evicted records outnumber the live ones.</p>
+ */
+class IdempotencyCache implements Closeable {
+    private static final int FILE_VERSION = 1;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final File file;
+    private final Logger logger;
+    private DataOutputStream out = null;
+    // records in the file, live or not, guarded by this
+    private int fileRecords = 0;
+
+    private record Entry(String key, long expiresAt, CompletableFuture<TransactionResult> result) {
+    }
+
+    /**
+     * @param file where to persist results, null to keep them in memory only
+     */
+    IdempotencyCache(int maxEntries, long ttlMillis, File file, Logger logger) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * load the results persisted before, then rewrite the file with the ones still live.
+     */
+    void open() throws IOException {
+        if (file == null) {
+            return;
+        }
+        var now = System.currentTimeMillis();
+        if (file.exists()) {
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+                if (in.readInt() == FILE_VERSION) {
+                    while (true) {
+                        var key = in.readUTF();
+                        var expiresAt = in.readLong();
+                        var receipt = ReceiptCodec.read(in);
+                        if (expiresAt > now) {
+                            put(new Entry(key, expiresAt, CompletableFuture.<TransactionResult>completedFuture(receipt)));
+                        }
+                    }
+                }
+            } catch (EOFException e) {
+                // end of file, or a record torn by a crash
+            }
+            evict(now);
+        }
+        rewrite();
+    }
+
+    /**
+     * rewrite the file with the live entries only, if expired or evicted records outnumber them.
+     */
+    synchronized void compact() throws IOException {
+        if (out == null) {
+            return;
+        }
+        evict(System.currentTimeMillis());
+        if (fileRecords - entries.size() > entries.size()) {
+            rewrite();
+        }
+    }
+
+    private synchronized void rewrite() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        try {
+            var records = new int[1];
+            DurableFiles.replace(file.toPath(), stream -> {
+                var compacted = new DataOutputStream(stream);
+                compacted.writeInt(FILE_VERSION);
+                for (var entry : insertionOrder) {
+                    // a result still running is appended by its own transaction once it completes
+                    var result = entry.result().getNow(null);
+                    if (result != null && entries.get(entry.key()) == entry) {
+                        writeEntry(compacted, entry.key(), entry.expiresAt(), result);
+                        records[0]++;
+                    }
+                }
+            });
+            fileRecords = records[0];
+        } finally {
+            // keep appending to whichever file is in place
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+    }
+
+    /**
+     * run a transaction unless one with the same key has succeeded recently.
+     *
+     * @return the result of the first successful transaction with this key, or of this run
+     */
+    TransactionResult execute(String key, Supplier<TransactionResult> transaction) {
+        var now = System.currentTimeMillis();
+        var entry = new Entry(key, now + ttlMillis, new CompletableFuture<>());
+        while (true) {
+            var existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                break;
+            }
+            if (existing.expiresAt() > now) {
+                try {
+                    var result = existing.result().join();
+                    if (result.isSuccess()) {
+                        return result;
+                    }
+                } catch (CompletionException e) {
+                    // the first attempt threw, run it again
+                }
+            }
+            entries.remove(key, existing);
+        }
+
+        TransactionResult result;
+        try {
+            result = transaction.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, entry);
+            entry.result().completeExceptionally(e);
+            throw e;
+        }
+        if (!result.isSuccess()) {
+            entries.remove(key, entry);
+            entry.result().complete(result);
+            return result;
+        }
+        insertionOrder.add(entry);
+        // complete before appending, so a rewrite in between keeps the entry instead of skipping it as running
+        entry.result().complete(result);
+        persist(entry, result);
+        evict(now);
+        return result;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void put(Entry entry) {
+        var previous = entries.put(entry.key(), entry);
+        if (previous != null) {
+            insertionOrder.remove(previous);
+        }
+        insertionOrder.add(entry);
+    }
+
+    private void evict(long now) {
+        Entry head;
+        while ((head = insertionOrder.peek()) != null && (head.expiresAt() <= now || entries.size() > maxEntries)) {
+            if (insertionOrder.remove(head)) {
+                entries.remove(head.key(), head);
+            }
+        }
+    }
+
+    private synchronized void persist(Entry entry, TransactionResult result) {
+        if (out == null) {
+            return;
+        }
+        try {
+            writeEntry(out, entry.key(), entry.expiresAt(), result);
+            out.flush();
+            fileRecords++;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to persist idempotency key " + entry.key(), e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, long expiresAt, TransactionResult result) throws IOException {
+        out.writeUTF(key);
+        out.writeLong(expiresAt);
+        ReceiptCodec.write(out, result.getReceipt());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close idempotency file", e);
+            }
+            out = null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package cat.nyaa.ecore;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free internal system vault holding its balance as a fixed-point <code>long</code> of minor units.
+ * <p>The balance is <code>base + credits</code>. Positive deposits only ever add to the striped {@link LongAdder},
+ * so fee crediting does not contend across threads. Withdrawals CAS the base; since credits never decrease, a
+ * balance check against a possibly stale sum of credits can only be conservative.</p>
+ */
+class InternalVault {
+    private final long scale;
+    private final AtomicLong base = new AtomicLong();
+    private final LongAdder credits = new LongAdder();
+
+    InternalVault(int fractionalDigits) {
+        if (fractionalDigits < 0 || fractionalDigits > 8) {
+            throw new IllegalArgumentException("fractional digits of internal vault must be within [0, 8]: " + fractionalDigits);
+        }
+        var scale = 1L;
+        for (int i = 0; i < fractionalDigits; i++) {
+            scale *= 10;
+        }
+        this.scale = scale;
+    }
+
+    long toMinor(double amount) {
+        return Math.round(amount * scale);
+    }
+
+    double toMajor(long minor) {
+        return (double) minor / scale;
+    }
+
+    void deposit(long minor) {
+        if (minor >= 0) {
+            credits.add(minor);
+        } else {
+            base.addAndGet(minor);
+        }
+    }
+
+    boolean withdraw(long minor) {
+        if (minor < 0) {
+            deposit(-minor);
+            return true;
+        }
+        while (true) {
+            var current = base.get();
+            if (current + credits.sum() < minor) {
+                return false;
+            }
+            if (base.compareAndSet(current, current - minor)) {
+                return true;
+            }
+        }
+    }
+
+    void set(long minor) {
+        base.set(minor - credits.sum());
+    }
+
+    long balance() {
+        return base.get() + credits.sum();
+    }
+}
@@ -0,0 +1,104 @@
+package cat.nyaa.ecore;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-size pool of JDBC connections, opened lazily and validated when borrowed.
+ */
+class JdbcConnectionPool implements Closeable {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed = false;
+
+    @FunctionalInterface
+    interface SqlFunction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    JdbcConnectionPool(String url, String user, String password, int size, long timeoutMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(Math.max(1, size), true);
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, size));
+    }
+
+    /**
+     * run a function with a connection of the pool, in auto-commit mode unless the function changes it.
+     * <p>A connection whose function threw is closed instead of being returned to the pool.</p>
+     */
+    <T> T withConnection(SqlFunction<T> function) throws SQLException {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("No JDBC connection available within " + timeoutMillis + "ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a JDBC connection.", e);
+        }
+        Connection connection = null;
+        try {
+            connection = borrow();
+            var result = function.apply(connection);
+            if (!connection.getAutoCommit()) {
+                connection.setAutoCommit(true);
+            }
+            if (closed || !idle.offer(connection)) {
+                connection.close();
+            }
+            connection = null;
+            return result;
+        } finally {
+            if (connection != null) {
+                closeQuietly(connection);
+            }
+            permits.release();
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("JDBC connection pool is closed.");
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return connection;
+            }
+            closeQuietly(connection);
+        }
+        return user.isEmpty() ? DriverManager.getConnection(url) : DriverManager.getConnection(url, user, password);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // broken already
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.OfflinePlayer;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link LedgerEconomy} in a {@link JdbcLedgerStore}, shared by every server connected to the same database.
+ * <p>Every call is a database round trip, so there is nothing to load or save. The store is owned and closed by
+ * the plugin, since the system vault may use it too.</p>
+ *
+ * <p>A balance which cannot be read is never reported as 0: {@link #getBalance(OfflinePlayer)} throws and
+ * {@link #has(OfflinePlayer, double)} answers false, so nobody mistakes a database outage for players being broke.</p>
+ */
+class JdbcLedger extends LedgerEconomy {
+    private final JdbcLedgerStore store;
+    private final Logger logger;
+
+    JdbcLedger(JdbcLedgerStore store, int fractionalDigits, double startingBalance, String currencyNameSingular, String currencyNamePlural, Logger logger) {
+        super(fractionalDigits, startingBalance, currencyNameSingular, currencyNamePlural);
+        this.store = store;
+        this.logger = logger;
+    }
+
+    @Override
+    void open() {
+    }
+
+    @Override
+    void save() throws IOException {
+        try {
+            store.flush();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @throws IllegalStateException if the database cannot be read
+     */
+    @Override
+    protected long balanceOf(UUID uuid) {
+        try {
+            return store.balance(uuid, startingBalance);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read ledger balance of " + uuid, e);
+        }
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        try {
+            return store.balance(player.getUniqueId(), startingBalance) >= toMinor(amount);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to read ledger balance of " + player.getUniqueId() + ", answering it has not " + amount, e);
+            return false;
+        }
+    }
+
+    @Override
+    protected boolean exists(UUID uuid) {
+        try {
+            return store.exists(uuid);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to look up ledger account " + uuid, e);
+            return false;
+        }
+    }
+
+    @Override
+    protected boolean create(UUID uuid) {
+        try {
+            return store.create(uuid, startingBalance);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to create ledger account " + uuid, e);
+            return false;
+        }
+    }
+
+    @Override
+    protected EconomyResponse change(UUID uuid, long minor, boolean withdraw) {
+        try {
+            var updated = store.change(uuid, withdraw ? -minor : minor, startingBalance);
+            if (updated == null) {
+                return new EconomyResponse(0, toMajor(store.balance(uuid, startingBalance)), EconomyResponse.ResponseType.FAILURE, "Insufficient funds.");
+            }
+            return new EconomyResponse(toMajor(minor), toMajor(updated), EconomyResponse.ResponseType.SUCCESS, null);
+        } catch (ArithmeticException e) {
+            return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Balance limit exceeded.");
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to change ledger balance of " + uuid, e);
+            return new EconomyResponse(0, 0, EconomyResponse.ResponseType.FAILURE, "Ledger database error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package cat.nyaa.ecore;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Balances of accounts in a database table shared by every server, as <code>long</code> minor units.
+ * <p>Every row carries a version which each write increments. A change reads the balance and the version, then
+ * writes only if the version has not moved meanwhile, retrying otherwise, so concurrent servers can never both spend
+ * the same funds. Deposits nobody waits on, like fee credits to the system vault, are accumulated in memory instead
+ * and written by a group commit, one batched transaction every few milliseconds.</p>
+ *
+ * <p>Only portable SQL is used, so any database with a JDBC driver on the server class path works, including the
+ * SQLite driver bundled with Spigot.</p>
+ */
+class JdbcLedgerStore implements Closeable {
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final JdbcConnectionPool pool;
+    private final String createSql;
+    private final String selectSql;
+    private final String insertSql;
+    private final String updateSql;
+    private final String addSql;
+    private final int maxRetries;
+    private final long groupCommitMillis;
+    private final Logger logger;
+    private final ConcurrentHashMap<UUID, Long> pendingDeposits = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService committer = null;
+
+    private record Row(long balance, long version) {
+    }
+
+    JdbcLedgerStore(JdbcConnectionPool pool, String table, int maxRetries, long groupCommitMillis, Logger logger) {
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Invalid ledger table name: " + table);
+        }
+        this.pool = pool;
+        this.createSql = "CREATE TABLE IF NOT EXISTS " + table + " (account CHAR(36) NOT NULL PRIMARY KEY, balance BIGINT NOT NULL, version BIGINT NOT NULL)";
+        this.selectSql = "SELECT balance, version FROM " + table + " WHERE account = ?";
+        this.insertSql = "INSERT INTO " + table + " (account, balance, version) VALUES (?, ?, 0)";
+        this.updateSql = "UPDATE " + table + " SET balance = ?, version = version + 1 WHERE account = ? AND version = ?";
+        this.addSql = "UPDATE " + table + " SET balance = balance + ?, version = version + 1 WHERE account = ?";
+        this.maxRetries = Math.max(1, maxRetries);
+        this.groupCommitMillis = Math.max(1, groupCommitMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * create the table if needed and start the group commit.
+     */
+    void open() throws SQLException {
+        pool.withConnection(connection -> {
+            try (var statement = connection.createStatement()) {
+                statement.execute(createSql);
+            }
+            return null;
+        });
+        committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "ECore-JDBC-Commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleWithFixedDelay(this::groupCommit, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private Row read(Connection connection, UUID account) throws SQLException {
+        try (var statement = connection.prepareStatement(selectSql)) {
+            statement.setString(1, account.toString());
+            try (var result = statement.executeQuery()) {
+                return result.next() ? new Row(result.getLong(1), result.getLong(2)) : null;
+            }
+        }
+    }
+
+    /**
+     * @return false if the row exists already
+     */
+    private boolean insert(Connection connection, UUID account, long balance) throws SQLException {
+        try (var statement = connection.prepareStatement(insertSql)) {
+            statement.setString(1, account.toString());
+            statement.setLong(2, balance);
+            return statement.executeUpdate() == 1;
+        } catch (SQLException e) {
+            // lost a race against another server inserting the same account
+            if (read(connection, account) != null) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return false if the row has been written since it was read at <code>version</code>
+     */
+    private boolean update(Connection connection, UUID account, long balance, long version) throws SQLException {
+        try (var statement = connection.prepareStatement(updateSql)) {
+            statement.setLong(1, balance);
+            statement.setString(2, account.toString());
+            statement.setLong(3, version);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    /**
+     * @param absent balance of an account without a row
+     * @return the balance, including deposits not committed yet
+     */
+    long balance(UUID account, long absent) throws SQLException {
+        var row = pool.withConnection(connection -> read(connection, account));
+        return (row == null ? absent : row.balance()) + pendingDeposits.getOrDefault(account, 0L);
+    }
+
+    boolean exists(UUID account) throws SQLException {
+        return pendingDeposits.containsKey(account) || pool.withConnection(connection -> read(connection, account)) != null;
+    }
+
+    /**
+     * @return false if the account exists already
+     */
+    boolean create(UUID account, long balance) throws SQLException {
+        return pool.withConnection(connection -> read(connection, account) == null && insert(connection, account, balance));
+    }
+
+    /**
+     * add a signed delta to a balance, creating the row if needed.
+     *
+     * @param absent balance of an account without a row
+     * @return the new balance, or null if a withdrawal would make it negative
+     * @throws ArithmeticException if the balance would overflow
+     */
+    Long change(UUID account, long delta, long absent) throws SQLException {
+        return pool.withConnection(connection -> {
+            for (int attempt = 0; attempt < maxRetries; attempt++) {
+                var row = read(connection, account);
+                var balance = row == null ? absent : row.balance();
+                var updated = Math.addExact(balance, delta);
+                if (delta < 0 && updated < 0) {
+                    return null;
+                }
+                if (row == null ? insert(connection, account, updated) : update(connection, account, updated, row.version())) {
+                    return updated;
+                }
+            }
+            throw new SQLTransientException("Balance of " + account + " kept changing concurrently, gave up after " + maxRetries + " attempts.");
+        });
+    }
+
+    /**
+     * overwrite a balance, creating the row if needed.
+     */
+    void set(UUID account, long balance) throws SQLException {
+        pool.withConnection(connection -> {
+            for (int attempt = 0; attempt < maxRetries; attempt++) {
+                var row = read(connection, account);
+                if (row == null ? insert(connection, account, balance) : update(connection, account, balance, row.version())) {
+                    return null;
+                }
+            }
+            throw new SQLTransientException("Balance of " + account + " kept changing concurrently, gave up after " + maxRetries + " attempts.");
+        });
+    }
+
+    /**
+     * queue a deposit for the next group commit, an account without a row is created from 0.
+     */
+    void depositLater(UUID account, long delta) {
+        pendingDeposits.merge(account, delta, Long::sum);
+    }
+
+    /**
+     * write every queued deposit in a single transaction, with one batched statement.
+     * <p>If the transaction fails, the deposits are queued again for the next attempt.</p>
+     */
+    void flush() throws SQLException {
+        synchronized (flushLock) {
+            if (pendingDeposits.isEmpty()) {
+                return;
+            }
+            var batch = new LinkedHashMap<UUID, Long>();
+            for (var account : pendingDeposits.keySet()) {
+                var delta = pendingDeposits.remove(account);
+                if (delta != null && delta != 0) {
+                    batch.put(account, delta);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                pool.withConnection(connection -> {
+                    connection.setAutoCommit(false);
+                    try {
+                        var accounts = new ArrayList<>(batch.keySet());
+                        int[] counts;
+                        try (var statement = connection.prepareStatement(addSql)) {
+                            for (var account : accounts) {
+                                statement.setLong(1, batch.get(account));
+                                statement.setString(2, account.toString());
+                                statement.addBatch();
+                            }
+                            counts = statement.executeBatch();
+                        }
+                        for (int i = 0; i < counts.length; i++) {
+                            if (counts[i] == 0 && !insert(connection, accounts.get(i), batch.get(accounts.get(i)))) {
+                                throw new SQLTransientException("Account " + accounts.get(i) + " was created concurrently.");
+                            }
+                        }
+                        connection.commit();
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        throw e;
+                    }
+                    return null;
+                });
+            } catch (SQLException e) {
+                batch.forEach((account, delta) -> pendingDeposits.merge(account, delta, Long::sum));
+                throw e;
+            }
+        }
+    }
+
+    private void groupCommit() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to commit " + pendingDeposits.size() + " pending ledger deposits, will retry.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (committer != null) {
+            committer.shutdown();
+            try {
+                committer.awaitTermination(groupCommitMillis * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, pendingDeposits.size() + " pending ledger deposits could not be committed.", e);
+        }
+        pool.close();
+    }
+}
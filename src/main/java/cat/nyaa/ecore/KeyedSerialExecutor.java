@@ -0,0 +1,126 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executor which runs tasks in submission order per account key, while tasks on unrelated keys run concurrently.
+ * <p>A task may involve several keys (e.g. payer and receivers). It starts after every previously submitted task
+ * touching any of its keys has completed. Tails are swapped under a single short lock so that multi-key tasks can
+ * never form a waiting cycle. Successors wait on a barrier of their own rather than on the future handed to the caller,
+ * so cancelling or completing that future does not let them start early.</p>
+ */
+class KeyedSerialExecutor {
+    private final ExecutorService workers;
+    private final Map<UUID, CompletableFuture<?>> tails = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    KeyedSerialExecutor(int threads) {
+        var counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            var thread = new Thread(runnable, "ECore-Async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    <T> CompletableFuture<T> submit(UUID key, Supplier<T> task) {
+        return submit(List.of(key), task);
+    }
+
+    <T> CompletableFuture<T> submit(Collection<UUID> keys, Supplier<T> task) {
+        var result = new CompletableFuture<T>();
+        if (closed) {
+            result.completeExceptionally(new RejectedExecutionException("ECore async executor is shut down."));
+            return result;
+        }
+        var barrier = new CompletableFuture<Void>();
+        var distinctKeys = new LinkedHashSet<>(keys);
+        var predecessors = new ArrayList<CompletableFuture<?>>(distinctKeys.size());
+        synchronized (tails) {
+            for (UUID key : distinctKeys) {
+                var previous = tails.put(key, barrier);
+                if (previous != null) {
+                    predecessors.add(previous);
+                }
+            }
+        }
+        pending.incrementAndGet();
+
+        Runnable run = () -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                release(barrier, distinctKeys);
+            }
+        };
+
+        if (predecessors.isEmpty()) {
+            dispatch(run, result, barrier, distinctKeys);
+        } else {
+            CompletableFuture.allOf(predecessors.toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((ignored, throwable) -> dispatch(run, result, barrier, distinctKeys));
+        }
+        return result;
+    }
+
+    private void dispatch(Runnable run, CompletableFuture<?> result, CompletableFuture<Void> barrier, Collection<UUID> keys) {
+        try {
+            workers.execute(run);
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            release(barrier, keys);
+        }
+    }
+
+    private void release(CompletableFuture<Void> barrier, Collection<UUID> keys) {
+        synchronized (tails) {
+            for (UUID key : keys) {
+                tails.remove(key, barrier);
+            }
+        }
+        barrier.complete(null);
+        pending.decrementAndGet();
+    }
+
+    /**
+     * stop accepting tasks, then wait for the queued ones to finish.
+     *
+     * @param timeoutMillis maximum time to wait for queued tasks
+     * @return true if every queued task finished in time
+     */
+    boolean shutdown(long timeoutMillis) {
+        closed = true;
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        workers.shutdown();
+        try {
+            return workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) && pending.get() == 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
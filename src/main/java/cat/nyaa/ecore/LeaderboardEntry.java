@@ -0,0 +1,13 @@
+package cat.nyaa.ecore;
+
+import java.util.UUID;
+
+/**
+ * an account on the balance leaderboard, see {@link EconomyCore#getTopBalances(int)}.
+ *
+ * @param vault   the account
+ * @param balance the balance of the account when it was last seen by ECore
+ * @param rank    1-based rank, 1 being the highest balance
+ */
+public record LeaderboardEntry(UUID vault, double balance, int rank) {
+}
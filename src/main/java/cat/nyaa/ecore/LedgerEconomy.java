@@ -0,0 +1,317 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.Economy;
+import net.milkbowl.vault.economy.EconomyResponse;
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Ecore's own ledger, provided to other plugins as the Vault {@link Economy}.
+ * <p>Balances are fixed-point <code>long</code>s of minor units. Subclasses store them, see {@link NativeLedger}
+ * and {@link JdbcLedger}, while this class implements the Vault API on top. Banks are not supported.</p>
+ */
+abstract class LedgerEconomy implements Economy, Closeable {
+    private static final EconomyResponse NO_BANK_SUPPORT = new EconomyResponse(0, 0, EconomyResponse.ResponseType.NOT_IMPLEMENTED, "Ecore ledger does not support banks.");
+
+    protected final int fractionalDigits;
+    protected final long startingBalance;
+    private final String currencyNameSingular;
+    private final String currencyNamePlural;
+    private final long scale;
+
+    LedgerEconomy(int fractionalDigits, double startingBalance, String currencyNameSingular, String currencyNamePlural) {
+        if (fractionalDigits < 0 || fractionalDigits > 8) {
+            throw new IllegalArgumentException("fractional digits of ledger must be within [0, 8]: " + fractionalDigits);
+        }
+        this.fractionalDigits = fractionalDigits;
+        this.currencyNameSingular = currencyNameSingular;
+        this.currencyNamePlural = currencyNamePlural;
+        var scale = 1L;
+        for (int i = 0; i < fractionalDigits; i++) {
+            scale *= 10;
+        }
+        this.scale = scale;
+        this.startingBalance = Math.round(startingBalance * scale);
+    }
+
+    /**
+     * load the stored balances, before the ledger is used.
+     */
+    abstract void open() throws IOException;
+
+    /**
+     * persist every balance changed since the last save, called periodically.
+     */
+    abstract void save() throws IOException;
+
+    /**
+     * @return the balance of an account in minor units, the starting balance if it has no account
+     */
+    protected abstract long balanceOf(UUID uuid);
+
+    protected abstract boolean exists(UUID uuid);
+
+    /**
+     * open an account with the starting balance.
+     *
+     * @return false if the account exists already
+     */
+    protected abstract boolean create(UUID uuid);
+
+    /**
+     * add a delta to a balance, opening the account if needed.
+     *
+     * @param minor amount in minor units, never negative
+     */
+    protected abstract EconomyResponse change(UUID uuid, long minor, boolean withdraw);
+
+    protected long toMinor(double amount) {
+        return Math.round(amount * scale);
+    }
+
+    protected double toMajor(long minor) {
+        return (double) minor / scale;
+    }
+
+    private EconomyResponse change(OfflinePlayer player, double amount, boolean withdraw) {
+        if (!(amount >= 0) || Double.isInfinite(amount)) {
+            return new EconomyResponse(0, getBalance(player), EconomyResponse.ResponseType.FAILURE, "Cannot " + (withdraw ? "withdraw" : "deposit") + " negative or invalid amount.");
+        }
+        return change(player.getUniqueId(), toMinor(amount), withdraw);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static OfflinePlayer byName(String playerName) {
+        return Bukkit.getOfflinePlayer(playerName);
+    }
+
+    @Override
+    public String getName() {
+        return "Ecore";
+    }
+
+    @Override
+    public boolean hasBankSupport() {
+        return false;
+    }
+
+    @Override
+    public int fractionalDigits() {
+        return fractionalDigits;
+    }
+
+    @Override
+    public String format(double amount) {
+        return String.format("%." + fractionalDigits + "f %s", amount, amount == 1 ? currencyNameSingular : currencyNamePlural);
+    }
+
+    @Override
+    public String currencyNamePlural() {
+        return currencyNamePlural;
+    }
+
+    @Override
+    public String currencyNameSingular() {
+        return currencyNameSingular;
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player) {
+        return exists(player.getUniqueId());
+    }
+
+    @Override
+    public boolean hasAccount(OfflinePlayer player, String worldName) {
+        return hasAccount(player);
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasAccount(String playerName) {
+        return hasAccount(byName(playerName));
+    }
+
+    @Override
+    @Deprecated
+    public boolean hasAccount(String playerName, String worldName) {
+        return hasAccount(playerName);
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player) {
+        return toMajor(balanceOf(player.getUniqueId()));
+    }
+
+    @Override
+    public double getBalance(OfflinePlayer player, String world) {
+        return getBalance(player);
+    }
+
+    @Override
+    @Deprecated
+    public double getBalance(String playerName) {
+        return getBalance(byName(playerName));
+    }
+
+    @Override
+    @Deprecated
+    public double getBalance(String playerName, String world) {
+        return getBalance(playerName);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, double amount) {
+        return balanceOf(player.getUniqueId()) >= toMinor(amount);
+    }
+
+    @Override
+    public boolean has(OfflinePlayer player, String worldName, double amount) {
+        return has(player, amount);
+    }
+
+    @Override
+    @Deprecated
+    public boolean has(String playerName, double amount) {
+        return has(byName(playerName), amount);
+    }
+
+    @Override
+    @Deprecated
+    public boolean has(String playerName, String worldName, double amount) {
+        return has(playerName, amount);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, double amount) {
+        return change(player, amount, true);
+    }
+
+    @Override
+    public EconomyResponse withdrawPlayer(OfflinePlayer player, String worldName, double amount) {
+        return withdrawPlayer(player, amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse withdrawPlayer(String playerName, double amount) {
+        return withdrawPlayer(byName(playerName), amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse withdrawPlayer(String playerName, String worldName, double amount) {
+        return withdrawPlayer(playerName, amount);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, double amount) {
+        return change(player, amount, false);
+    }
+
+    @Override
+    public EconomyResponse depositPlayer(OfflinePlayer player, String worldName, double amount) {
+        return depositPlayer(player, amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse depositPlayer(String playerName, double amount) {
+        return depositPlayer(byName(playerName), amount);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse depositPlayer(String playerName, String worldName, double amount) {
+        return depositPlayer(playerName, amount);
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player) {
+        return create(player.getUniqueId());
+    }
+
+    @Override
+    public boolean createPlayerAccount(OfflinePlayer player, String worldName) {
+        return createPlayerAccount(player);
+    }
+
+    @Override
+    @Deprecated
+    public boolean createPlayerAccount(String playerName) {
+        return createPlayerAccount(byName(playerName));
+    }
+
+    @Override
+    @Deprecated
+    public boolean createPlayerAccount(String playerName, String worldName) {
+        return createPlayerAccount(playerName);
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse createBank(String name, String player) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse createBank(String name, OfflinePlayer player) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse deleteBank(String name) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse bankBalance(String name) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse bankHas(String name, double amount) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse bankWithdraw(String name, double amount) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse bankDeposit(String name, double amount) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse isBankOwner(String name, String playerName) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse isBankOwner(String name, OfflinePlayer player) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    @Deprecated
+    public EconomyResponse isBankMember(String name, String playerName) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public EconomyResponse isBankMember(String name, OfflinePlayer player) {
+        return NO_BANK_SUPPORT;
+    }
+
+    @Override
+    public List<String> getBanks() {
+        return List.of();
+    }
+}
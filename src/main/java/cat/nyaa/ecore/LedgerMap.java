@@ -0,0 +1,115 @@
+package cat.nyaa.ecore;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash map from {@link UUID} to a primitive <code>long</code>, with linear probing.
+ * <p>Keys are stored as their two halves in parallel <code>long</code> arrays, so neither keys nor values are boxed.
+ * Accounts are never removed from a ledger, so there are no tombstones. Not thread-safe.</p>
+ */
+class LedgerMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private long[] values;
+    private boolean[] used;
+    private int mask;
+    private int size = 0;
+
+    @FunctionalInterface
+    interface Visitor {
+        void visit(long msb, long lsb, long value);
+    }
+
+    LedgerMap(int expectedSize) {
+        var capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private int indexOf(long msb, long lsb) {
+        var hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        var index = (int) (hash ^ (hash >>> 32)) & mask;
+        while (used[index] && (msbs[index] != msb || lsbs[index] != lsb)) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    boolean containsKey(long msb, long lsb) {
+        return used[indexOf(msb, lsb)];
+    }
+
+    long get(long msb, long lsb, long defaultValue) {
+        var index = indexOf(msb, lsb);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    void put(long msb, long lsb, long value) {
+        var index = indexOf(msb, lsb);
+        if (!used[index]) {
+            // keep the load factor at or below one half
+            if ((size + 1) * 2 > used.length) {
+                grow();
+                index = indexOf(msb, lsb);
+            }
+            used[index] = true;
+            msbs[index] = msb;
+            lsbs[index] = lsb;
+            size++;
+        }
+        values[index] = value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(Visitor visitor) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) {
+                visitor.visit(msbs[i], lsbs[i], values[i]);
+            }
+        }
+    }
+
+    LedgerMap copy() {
+        var copy = new LedgerMap(0);
+        copy.msbs = Arrays.copyOf(msbs, msbs.length);
+        copy.lsbs = Arrays.copyOf(lsbs, lsbs.length);
+        copy.values = Arrays.copyOf(values, values.length);
+        copy.used = Arrays.copyOf(used, used.length);
+        copy.mask = mask;
+        copy.size = size;
+        return copy;
+    }
+
+    private void grow() {
+        var oldMsbs = msbs;
+        var oldLsbs = lsbs;
+        var oldValues = values;
+        var oldUsed = used;
+        allocate(oldUsed.length << 1);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                var index = indexOf(oldMsbs[i], oldLsbs[i]);
+                used[index] = true;
+                msbs[index] = oldMsbs[i];
+                lsbs[index] = oldLsbs[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package cat.nyaa.ecore;
+
+import net.milkbowl.vault.economy.EconomyResponse;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * {@link LedgerEconomy} kept in memory by this server alone.
+ * <p>Balances are held in a {@link LedgerMap}. Every change journals the resulting balance of the account, and
+ * {@link #save()} writes a binary snapshot of the whole map and compacts the journal behind it.</p>
+ */
+class NativeLedger extends LedgerEconomy {
+    private static final byte JOURNAL_SET = 1;
+    private static final int SNAPSHOT_MAGIC = 0x45434c47;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final long journalGroupCommitMillis;
+    private final Logger logger;
+    private final Object saveLock = new Object();
+    private LedgerMap balances = new LedgerMap(1024);
+    private WriteAheadJournal journal = null;
+    private long savedSeq = -1;
+
+    NativeLedger(File dataFolder, int fractionalDigits, double startingBalance, String currencyNameSingular, String currencyNamePlural,
+                 long journalGroupCommitMillis, Logger logger) {
+        super(fractionalDigits, startingBalance, currencyNameSingular, currencyNamePlural);
+        this.snapshotFile = new File(dataFolder, "ledger.bin");
+        this.journalFile = new File(dataFolder, "ledger_journal.bin");
+        this.journalGroupCommitMillis = journalGroupCommitMillis;
+        this.logger = logger;
+    }
+
+    /**
+     * load the latest snapshot and replay the journal written since.
+     */
+    @Override
+    synchronized void open() throws IOException {
+        var snapshotSeq = 0L;
+        if (snapshotFile.exists()) {
+            try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile.toPath())))) {
+                if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException("Unrecognized ledger snapshot " + snapshotFile.getName());
+                }
+                var savedFractionalDigits = input.readInt();
+                if (savedFractionalDigits != fractionalDigits) {
+                    throw new IOException("Ledger was saved with " + savedFractionalDigits + " fractional digits but " + fractionalDigits + " are configured.");
+                }
+                snapshotSeq = input.readLong();
+                var size = input.readInt();
+                balances = new LedgerMap(size);
+                for (int i = 0; i < size; i++) {
+                    balances.put(input.readLong(), input.readLong(), input.readLong());
+                }
+            }
+            logger.info("Loaded " + balances.size() + " ledger accounts.");
+        }
+        journal = new WriteAheadJournal(journalFile, journalGroupCommitMillis, logger);
+        var lastSeq = journal.open(snapshotSeq, (type, seq, a, b, c) -> {
+            if (type == JOURNAL_SET) {
+                balances.put(a, b, c);
+            }
+        });
+        if (lastSeq > snapshotSeq) {
+            logger.info("Replayed ledger journal up to #" + lastSeq + ".");
+        }
+    }
+
+    /**
+     * durably replace the snapshot with one of every balance, then compact the journal behind it.
+     */
+    @Override
+    void save() throws IOException {
+        synchronized (saveLock) {
+            LedgerMap copy;
+            long seq;
+            synchronized (this) {
+                seq = journal.lastSeq();
+                if (seq == savedSeq) {
+                    return;
+                }
+                copy = snapshot();
+            }
+            DurableFiles.replace(snapshotFile.toPath(), out -> {
+                var output = new DataOutputStream(out);
+                output.writeInt(SNAPSHOT_MAGIC);
+                output.writeInt(SNAPSHOT_VERSION);
+                output.writeInt(fractionalDigits);
+                output.writeLong(seq);
+                output.writeInt(copy.size());
+                var error = new IOException[1];
+                copy.forEach((msb, lsb, value) -> {
+                    if (error[0] != null) {
+                        return;
+                    }
+                    try {
+                        output.writeLong(msb);
+                        output.writeLong(lsb);
+                        output.writeLong(value);
+                    } catch (IOException e) {
+                        error[0] = e;
+                    }
+                });
+                if (error[0] != null) {
+                    throw error[0];
+                }
+            });
+            journal.compact(seq);
+            savedSeq = seq;
+        }
+    }
+
+    /**
+     * @return a copy of every balance, in minor units, as of a single point in time
+     */
+    synchronized LedgerMap snapshot() {
+        return balances.copy();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        save();
+        journal.close();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return journal != null;
+    }
+
+    @Override
+    protected synchronized long balanceOf(UUID uuid) {
+        return balances.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), startingBalance);
+    }
+
+    private synchronized void set(UUID uuid, long balance) {
+        var msb = uuid.getMostSignificantBits();
+        var lsb = uuid.getLeastSignificantBits();
+        balances.put(msb, lsb, balance);
+        journal.append(JOURNAL_SET, msb, lsb, balance);
+    }
+
+    @Override
+    protected synchronized boolean exists(UUID uuid) {
+        return balances.containsKey(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    protected synchronized boolean create(UUID uuid) {
+        if (exists(uuid)) {
+            return false;
+        }
+        set(uuid, startingBalance);
+        return true;
+    }
+
+    @Override
+    protected synchronized EconomyResponse change(UUID uuid, long minor, boolean withdraw) {
+        var balance = balanceOf(uuid);
+        if (withdraw && balance < minor) {
+            return new EconomyResponse(0, toMajor(balance), EconomyResponse.ResponseType.FAILURE, "Insufficient funds.");
+        }
+        long updated;
+        try {
+            updated = withdraw ? balance - minor : Math.addExact(balance, minor);
+        } catch (ArithmeticException e) {
+            return new EconomyResponse(0, toMajor(balance), EconomyResponse.ResponseType.FAILURE, "Balance limit exceeded.");
+        }
+        set(uuid, updated);
+        return new EconomyResponse(toMajor(minor), toMajor(updated), EconomyResponse.ResponseType.SUCCESS, null);
+    }
+}
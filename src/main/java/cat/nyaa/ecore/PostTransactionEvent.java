@@ -0,0 +1,34 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called after a transfer, trade, batched trade or hold capture has succeeded.
+ * <p>Called on the thread which made the transaction, so it is asynchronous when that is not the main thread, after
+ * the accounts have been unlocked. Consumers of many receipts should prefer a {@link ReceiptListener}, which does not
+ * delay the transaction at all.</p>
+ */
+public class PostTransactionEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final Receipt receipt;
+
+    PostTransactionEvent(Receipt receipt, boolean async) {
+        super(async);
+        this.receipt = receipt;
+    }
+
+    public Receipt getReceipt() {
+        return receipt;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
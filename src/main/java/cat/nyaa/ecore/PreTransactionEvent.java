@@ -0,0 +1,76 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Called before a transfer, trade, batched trade or hold capture moves any money. Cancelling it fails the transaction
+ * with {@link TransactionStatus#CANCELLED}.
+ * <p>Called on the thread making the transaction, so it is asynchronous when that is not the main thread. No account
+ * is locked yet while it is called.</p>
+ */
+public class PreTransactionEvent extends Event implements Cancellable {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final UUID payer;
+    private final List<UUID> receivers;
+    private final double amount;
+    private final double feeRate;
+    private final ServiceFeePreference serviceFeePreference;
+    private boolean cancelled = false;
+
+    PreTransactionEvent(UUID payer, List<UUID> receivers, double amount, double feeRate, ServiceFeePreference serviceFeePreference, boolean async) {
+        super(async);
+        this.payer = payer;
+        this.receivers = receivers;
+        this.amount = amount;
+        this.feeRate = feeRate;
+        this.serviceFeePreference = serviceFeePreference;
+    }
+
+    public UUID getPayer() {
+        return payer;
+    }
+
+    public List<UUID> getReceivers() {
+        return receivers;
+    }
+
+    /**
+     * @return the amount paid to every receiver
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    public double getFeeRate() {
+        return feeRate;
+    }
+
+    public ServiceFeePreference getServiceFeePreference() {
+        return serviceFeePreference;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -8,6 +8,16 @@ public interface Receipt {
 
     List<UUID> getReceiver();
 
+    /**
+     * receivers that were requested but not paid because their deposit failed upstream.
+     * Their share has been refunded to the payer and is not counted in the totals of this receipt.
+     *
+     * @return failed receivers, empty if every receiver was paid
+     */
+    default List<UUID> getFailedReceivers() {
+        return List.of();
+    }
+
     double getAmountArrivePerTransaction();
 
     double getAmountArriveTotally();
@@ -29,4 +39,13 @@ public interface Receipt {
     ServiceFeePreference getTaxPreference();
 
     long getId();
+
+    /**
+     * time the transaction was settled.
+     *
+     * @return milliseconds since the epoch, 0 if unknown
+     */
+    default long getTimestamp() {
+        return 0;
+    }
 }
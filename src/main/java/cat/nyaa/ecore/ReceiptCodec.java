@@ -0,0 +1,83 @@
+package cat.nyaa.ecore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary form of {@link Receipt}, shared by everything that persists receipts.
+ */
+final class ReceiptCodec {
+    private static final byte VERSION = 1;
+    private static final ServiceFeePreference[] PREFERENCES = ServiceFeePreference.values();
+
+    private ReceiptCodec() {
+    }
+
+    static void write(DataOutput out, Receipt receipt) throws IOException {
+        out.writeByte(VERSION);
+        out.writeLong(receipt.getId());
+        out.writeLong(receipt.getTimestamp());
+        writeUUID(out, receipt.getPayer());
+        writeUUIDs(out, receipt.getReceiver());
+        writeUUIDs(out, receipt.getFailedReceivers());
+        out.writeDouble(receipt.getAmountPerTransaction());
+        out.writeDouble(receipt.getAmountArrivePerTransaction());
+        out.writeDouble(receipt.getFeePerTransaction());
+        out.writeDouble(receipt.getFeeRate());
+        out.writeDouble(receipt.getPayerRemain());
+        out.writeByte(receipt.getTaxPreference().ordinal());
+    }
+
+    static ReceiptInternal read(DataInput in) throws IOException {
+        var version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown receipt format version: " + version);
+        }
+        var id = in.readLong();
+        var timestamp = in.readLong();
+        var payer = readUUID(in);
+        var receivers = readUUIDs(in);
+        var failedReceivers = readUUIDs(in);
+        if (receivers.length == 0) {
+            throw new IOException("Receipt " + Long.toHexString(id) + " has no receiver");
+        }
+        var amount = in.readDouble();
+        var arrivalAmount = in.readDouble();
+        var fee = in.readDouble();
+        var feeRate = in.readDouble();
+        var payerRemain = in.readDouble();
+        var preference = PREFERENCES[in.readByte()];
+        return new ReceiptInternal(payer, receivers, failedReceivers, amount, arrivalAmount, fee, feeRate, payerRemain, preference, id, timestamp);
+    }
+
+    private static void writeUUID(DataOutput out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void writeUUIDs(DataOutput out, List<UUID> uuids) throws IOException {
+        out.writeInt(uuids.size());
+        for (UUID uuid : uuids) {
+            writeUUID(out, uuid);
+        }
+    }
+
+    private static UUID[] readUUIDs(DataInput in) throws IOException {
+        var size = in.readInt();
+        if (size == 0) {
+            return ReceiptInternal.NO_RECEIVERS;
+        }
+        var uuids = new UUID[size];
+        for (int i = 0; i < size; i++) {
+            uuids[i] = readUUID(in);
+        }
+        return uuids;
+    }
+}
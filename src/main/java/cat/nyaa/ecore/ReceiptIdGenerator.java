@@ -0,0 +1,35 @@
+package cat.nyaa.ecore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out receipt ids which increase strictly and sort by time.
+ * <p>An id is the milliseconds since 2020-01-01 shifted left by {@value #SEQUENCE_BITS} bits, plus a sequence within
+ * the millisecond. It is taken by compare-and-set from the last id, so it never repeats or goes backwards, even when
+ * more than 4 million ids are taken within a millisecond or the clock is turned back; the time in it then runs a
+ * little ahead of the clock until the clock catches up.</p>
+ */
+class ReceiptIdGenerator {
+    static final int SEQUENCE_BITS = 22;
+    private static final long EPOCH_MILLIS = 1577836800000L;
+
+    private final AtomicLong last = new AtomicLong();
+
+    long next() {
+        var now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        while (true) {
+            var previous = last.get();
+            var id = Math.max(now, previous + 1);
+            if (last.compareAndSet(previous, id)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds since the epoch at which an id was taken
+     */
+    static long timestampOf(long id) {
+        return (id >>> SEQUENCE_BITS) + EPOCH_MILLIS;
+    }
+}
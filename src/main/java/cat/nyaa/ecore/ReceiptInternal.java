@@ -0,0 +1,184 @@
+package cat.nyaa.ecore;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Receipt of a successful transaction, which is its own {@link TransactionResult} so settling allocates nothing else.
+ * <p>Receivers are kept in plain arrays, the single receiver of a trade inline. Lists handed out by
+ * {@link #getReceiver()} and the text of {@link #toString()} are only built when asked for.</p>
+ */
+final class ReceiptInternal implements Receipt, TransactionResult {
+    static final UUID[] NO_RECEIVERS = new UUID[0];
+
+    private final UUID payer;
+    // the only receiver if receivers is null
+    private final UUID receiver;
+    private final UUID[] receivers;
+    private final UUID[] failedReceivers;
+    private final double amount;
+    private final double arrivalAmount;
+    private final double fee;
+    private final double feeRate;
+    private final double payerRemain;
+    private final ServiceFeePreference serviceFeePreference;
+    private final long receiptId;
+    private final long timestamp;
+
+    private ReceiptInternal(UUID payer, UUID receiver, UUID[] receivers, UUID[] failedReceivers, double amount, double arrivalAmount, double fee,
+                            double feeRate, double payerRemain, ServiceFeePreference serviceFeePreference, long receiptId, long timestamp) {
+        this.payer = payer;
+        this.receiver = receiver;
+        this.receivers = receivers;
+        this.failedReceivers = failedReceivers;
+        this.amount = amount;
+        this.arrivalAmount = arrivalAmount;
+        this.fee = fee;
+        this.feeRate = feeRate;
+        this.payerRemain = payerRemain;
+        this.serviceFeePreference = serviceFeePreference;
+        this.receiptId = receiptId;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * receipt of a transaction which paid exactly one receiver.
+     */
+    ReceiptInternal(UUID payer, UUID receiver, double amount, double arrivalAmount, double fee, double feeRate, double payerRemain,
+                    ServiceFeePreference serviceFeePreference, long receiptId, long timestamp) {
+        this(payer, receiver, null, NO_RECEIVERS, amount, arrivalAmount, fee, feeRate, payerRemain, serviceFeePreference, receiptId, timestamp);
+    }
+
+    /**
+     * @param receivers       paid receivers, at least one, not copied
+     * @param failedReceivers receivers whose share was refunded, not copied
+     */
+    ReceiptInternal(UUID payer, UUID[] receivers, UUID[] failedReceivers, double amount, double arrivalAmount, double fee, double feeRate,
+                    double payerRemain, ServiceFeePreference serviceFeePreference, long receiptId, long timestamp) {
+        this(payer, receivers.length == 1 ? receivers[0] : null, receivers.length == 1 ? null : receivers, failedReceivers,
+                amount, arrivalAmount, fee, feeRate, payerRemain, serviceFeePreference, receiptId, timestamp);
+    }
+
+    int receiverCount() {
+        return receivers == null ? 1 : receivers.length;
+    }
+
+    UUID receiver(int index) {
+        if (receivers == null) {
+            if (index != 0) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return receiver;
+        }
+        return receivers[index];
+    }
+
+    @Override
+    public TransactionStatus status() {
+        return TransactionStatus.SUCCESS;
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    @Override
+    public Receipt getReceipt() {
+        return this;
+    }
+
+    @Override
+    public UUID getPayer() {
+        return payer;
+    }
+
+    @Override
+    public List<UUID> getReceiver() {
+        return receivers == null ? List.of(receiver) : Collections.unmodifiableList(Arrays.asList(receivers));
+    }
+
+    @Override
+    public List<UUID> getFailedReceivers() {
+        return failedReceivers.length == 0 ? List.of() : Collections.unmodifiableList(Arrays.asList(failedReceivers));
+    }
+
+    @Override
+    public double getAmountArrivePerTransaction() {
+        return arrivalAmount;
+    }
+
+    @Override
+    public double getAmountArriveTotally() {
+        return getAmountArrivePerTransaction() * receiverCount();
+    }
+
+    @Override
+    public double getFeePerTransaction() {
+        return fee;
+    }
+
+    @Override
+    public double getFeeTotally() {
+        return fee * receiverCount();
+    }
+
+    @Override
+    public double getAmountPerTransaction() {
+        return amount;
+    }
+
+    @Override
+    public double getAmountTotally() {
+        return amount * receiverCount();
+    }
+
+    @Override
+    public double getFeeRate() {
+        return feeRate;
+    }
+
+    @Override
+    public double getFeeRatePercent() {
+        return getFeeRate() * 100;
+    }
+
+    @Override
+    public double getPayerRemain() {
+        return payerRemain;
+    }
+
+    @Override
+    public ServiceFeePreference getTaxPreference() {
+        return serviceFeePreference;
+    }
+
+    @Override
+    public long getId() {
+        return receiptId;
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceiptInternal{" +
+                "payer=" + payer +
+                ", receivers=" + getReceiver() +
+                (failedReceivers.length == 0 ? "" : ", failedReceivers=" + getFailedReceivers()) +
+                ", amount=" + amount + "(" + getAmountTotally() + " totally)" +
+                ", arrivalAmount=" + arrivalAmount +
+                ", fee=" + fee + "(" + getFeeTotally() + " totally)" +
+                ", feeRate=" + feeRate +
+                ", payerRemain=" + payerRemain +
+                ", serviceFeePreference=" + serviceFeePreference +
+                ", receiptId=" + Long.toHexString(receiptId) +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package cat.nyaa.ecore;
+
+import java.util.List;
+
+/**
+ * Receives the receipts of successful transactions in batches, on a background thread of ECore.
+ * <p>Register one with {@link EconomyCore#registerReceiptListener(ReceiptListener)}. Receipts are delivered in the
+ * order they were made, and are dropped if listeners fall too far behind.</p>
+ */
+@FunctionalInterface
+public interface ReceiptListener {
+    /**
+     * @param receipts receipts since the last call, never empty, only valid during the call
+     */
+    void onReceipts(List<Receipt> receipts);
+}
@@ -0,0 +1,570 @@
+package cat.nyaa.ecore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent store of settled receipts.
+ * <p>Receipts are appended by a background writer in batches to one segment file per UTC day, each entry being
+ * <code>length:int | {@link ReceiptCodec} bytes</code>. Every segment has an in-memory index by payer, receiver,
+ * time and id: the current segment's is maintained by the writer, older ones are built by scanning the file on
+ * first use and kept in a small LRU, as are the channels receipts are read through.</p>
+ *
+ * <p>Receipt ids are time ordered, so a receipt is looked up in the segment of the day its id was taken only. The
+ * queue in front of the writer is bounded; when the writer falls that far behind, receipts are dropped and
+ * counted.</p>
+ */
+class ReceiptStore implements Closeable {
+    private static final DateTimeFormatter SEGMENT_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final String SEGMENT_PREFIX = "receipts-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MAX_BATCH = 1024;
+
+    private final File directory;
+    private final Logger logger;
+    private final LinkedBlockingQueue<Receipt> queue;
+    private final NavigableSet<Long> segmentDays = new TreeSet<>();
+    private final Map<Long, SegmentIndex> cachedIndexes;
+    private final Map<Long, FileChannel> readChannels;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private long droppedReported = 0;
+
+    // written by the writer thread, read under the lock of this store
+    private SegmentIndex activeIndex = null;
+    private DataOutputStream activeOutput = null;
+
+    ReceiptStore(File directory, int cachedSegmentIndexes, long retentionDays, int queueCapacity, Logger logger) throws IOException {
+        this.directory = directory;
+        this.logger = logger;
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.cachedIndexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SegmentIndex> eldest) {
+                return size() > Math.max(1, cachedSegmentIndexes);
+            }
+        };
+        this.readChannels = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FileChannel> eldest) {
+                // one more than the indexes, for the active segment
+                if (size() <= Math.max(1, cachedSegmentIndexes) + 1) {
+                    return false;
+                }
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create receipt directory " + directory);
+        }
+        var files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        var oldestKept = retentionDays > 0 ? LocalDate.now(ZoneOffset.UTC).toEpochDay() - retentionDays : Long.MIN_VALUE;
+        for (File file : files == null ? new File[0] : files) {
+            var date = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+            long day;
+            try {
+                day = LocalDate.parse(date, SEGMENT_DATE).toEpochDay();
+            } catch (Exception e) {
+                continue;
+            }
+            if (day < oldestKept) {
+                if (!file.delete()) {
+                    logger.warning("Failed to delete expired receipt segment " + file.getName() + ".");
+                }
+            } else {
+                segmentDays.add(day);
+            }
+        }
+
+        this.writer = new Thread(this::runWriter, "ECore-ReceiptStore");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * queue a receipt to be persisted. Never blocks, drops the receipt if the queue is full.
+     */
+    void append(Receipt receipt) {
+        if (!closed && !queue.offer(receipt)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return number of receipts dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the receipt, or null if not found
+     */
+    Receipt get(long receiptId) {
+        // ids are time ordered, so a receipt can only be in the segment of the day its id was taken
+        var day = dayOf(ReceiptIdGenerator.timestampOf(receiptId));
+        synchronized (this) {
+            if (!segmentDays.contains(day)) {
+                return null;
+            }
+        }
+        var index = index(day);
+        if (index == null) {
+            return null;
+        }
+        long offset;
+        synchronized (this) {
+            offset = index.offsetOf(receiptId);
+        }
+        return offset >= 0 ? read(day, offset) : null;
+    }
+
+    /**
+     * receipts paid or received by an account within <code>[fromMillis, toMillis]</code>, newest first.
+     */
+    List<Receipt> query(UUID vault, long fromMillis, long toMillis, int offset, int limit) {
+        var result = new ArrayList<Receipt>(Math.min(Math.max(0, limit), 256));
+        var toSkip = Math.max(0, offset);
+        for (long day : daysDescending(fromMillis, toMillis)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            var index = index(day);
+            if (index == null) {
+                continue;
+            }
+            long[] entryOffsets;
+            synchronized (this) {
+                entryOffsets = index.offsetsOf(vault, fromMillis, toMillis);
+            }
+            for (long entryOffset : entryOffsets) {
+                if (toSkip > 0) {
+                    toSkip--;
+                    continue;
+                }
+                if (result.size() >= limit) {
+                    break;
+                }
+                var receipt = read(day, entryOffset);
+                if (receipt != null) {
+                    result.add(receipt);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<Long> daysDescending(long fromMillis, long toMillis) {
+        synchronized (this) {
+            var from = fromMillis == Long.MIN_VALUE ? Long.MIN_VALUE : dayOf(fromMillis);
+            var to = toMillis == Long.MAX_VALUE ? Long.MAX_VALUE : dayOf(toMillis);
+            if (from > to) {
+                return List.of();
+            }
+            return new ArrayList<>(segmentDays.subSet(from, true, to, true).descendingSet());
+        }
+    }
+
+    private SegmentIndex index(long day) {
+        synchronized (this) {
+            if (activeIndex != null && activeIndex.day == day) {
+                return activeIndex;
+            }
+            var index = cachedIndexes.get(day);
+            if (index != null) {
+                return index;
+            }
+        }
+        try {
+            var index = SegmentIndex.scan(day, segmentFile(day));
+            synchronized (this) {
+                cachedIndexes.put(day, index);
+            }
+            return index;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to index receipt segment " + segmentFile(day).getName(), e);
+            return null;
+        }
+    }
+
+    private Receipt read(long day, long offset) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                var channel = readChannel(day);
+                var length = ByteBuffer.allocate(4);
+                readFully(channel, length, offset);
+                var bytes = ByteBuffer.allocate(length.getInt(0));
+                readFully(channel, bytes, offset + 4);
+                return ReceiptCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.array())));
+            } catch (ClosedChannelException e) {
+                // closed by eviction or by an interrupted reader, open it once more
+                if (attempt > 0) {
+                    logger.log(Level.WARNING, "Failed to read receipt at " + offset + " of " + segmentFile(day).getName(), e);
+                    return null;
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to read receipt at " + offset + " of " + segmentFile(day).getName(), e);
+                return null;
+            }
+        }
+    }
+
+    private synchronized FileChannel readChannel(long day) throws IOException {
+        var channel = readChannels.get(day);
+        if (channel == null || !channel.isOpen()) {
+            channel = FileChannel.open(segmentFile(day).toPath(), StandardOpenOption.READ);
+            readChannels.put(day, channel);
+        }
+        return channel;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // only read from, nothing is lost
+        }
+    }
+
+    private File segmentFile(long day) {
+        return new File(directory, SEGMENT_PREFIX + LocalDate.ofEpochDay(day).format(SEGMENT_DATE) + SEGMENT_SUFFIX);
+    }
+
+    private static long dayOf(long millis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).toEpochDay();
+    }
+
+    private void runWriter() {
+        var batch = new ArrayList<Receipt>(MAX_BATCH);
+        var buffer = new ByteArrayOutputStream(256);
+        var bufferOutput = new DataOutputStream(buffer);
+        var pendingOffsets = new long[MAX_BATCH];
+        while (!closed || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(100, TimeUnit.MILLISECONDS);
+                reportDropped();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                // write the batch, splitting it where it crosses into another day
+                var start = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    var receipt = batch.get(i);
+                    var day = dayOf(receipt.getTimestamp());
+                    if (activeIndex == null || activeIndex.day != day) {
+                        publish(batch, pendingOffsets, start, i);
+                        start = i;
+                        openSegment(day);
+                    }
+                    buffer.reset();
+                    ReceiptCodec.write(bufferOutput, receipt);
+                    pendingOffsets[i] = activeIndex.length;
+                    activeOutput.writeInt(buffer.size());
+                    buffer.writeTo(activeOutput);
+                    activeIndex.length += 4 + buffer.size();
+                }
+                publish(batch, pendingOffsets, start, batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Failed to persist " + batch.size() + " receipts", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeSegment();
+    }
+
+    private void reportDropped() {
+        var total = dropped.sum();
+        if (total > droppedReported) {
+            logger.warning("Receipt store queue full, dropped " + (total - droppedReported) + " receipts (" + total + " in total).");
+            droppedReported = total;
+        }
+    }
+
+    private void publish(List<Receipt> batch, long[] offsets, int from, int to) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        activeOutput.flush();
+        synchronized (this) {
+            for (int i = from; i < to; i++) {
+                activeIndex.add(batch.get(i), offsets[i]);
+            }
+        }
+    }
+
+    private void openSegment(long day) throws IOException {
+        closeSegment();
+        var file = segmentFile(day);
+        SegmentIndex index;
+        synchronized (this) {
+            index = cachedIndexes.remove(day);
+        }
+        if (index == null) {
+            index = SegmentIndex.scan(day, file);
+        }
+        try (var raf = new RandomAccessFile(file, "rw")) {
+            // drop an entry torn by a crash
+            if (raf.length() > index.length) {
+                raf.setLength(index.length);
+            }
+        }
+        var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024));
+        synchronized (this) {
+            segmentDays.add(day);
+            activeIndex = index;
+            activeOutput = output;
+        }
+    }
+
+    private void closeSegment() {
+        if (activeOutput == null) {
+            return;
+        }
+        try {
+            activeOutput.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close receipt segment", e);
+        }
+        synchronized (this) {
+            cachedIndexes.put(activeIndex.day, activeIndex);
+            activeIndex = null;
+            activeOutput = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            logger.severe(queue.size() + " receipts could not be persisted before shutdown.");
+        }
+        synchronized (this) {
+            readChannels.values().forEach(ReceiptStore::closeQuietly);
+            readChannels.clear();
+        }
+    }
+
+    /**
+     * In-memory index of one segment. Entries are kept in append order, which is also time order.
+     */
+    private static final class SegmentIndex {
+        final long day;
+        long length = 0;
+        private int size = 0;
+        private final IdMap offsetsById = new IdMap();
+        private long[] offsets = new long[64];
+        private long[] timestamps = new long[64];
+        private final Map<UUID, IntArray> byPayer = new HashMap<>();
+        private final Map<UUID, IntArray> byReceiver = new HashMap<>();
+
+        private SegmentIndex(long day) {
+            this.day = day;
+        }
+
+        static SegmentIndex scan(long day, File file) throws IOException {
+            var index = new SegmentIndex(day);
+            if (!file.exists()) {
+                return index;
+            }
+            try (var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+                while (true) {
+                    byte[] bytes;
+                    try {
+                        var length = input.readInt();
+                        if (length <= 0 || length > 1 << 24) {
+                            break;
+                        }
+                        bytes = new byte[length];
+                        input.readFully(bytes);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    Receipt receipt;
+                    try {
+                        receipt = ReceiptCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                    } catch (IOException e) {
+                        break;
+                    }
+                    index.add(receipt, index.length);
+                    index.length += 4 + bytes.length;
+                }
+            }
+            return index;
+        }
+
+        void add(Receipt receipt, long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+            }
+            offsetsById.put(receipt.getId(), offset);
+            offsets[size] = offset;
+            timestamps[size] = receipt.getTimestamp();
+            byPayer.computeIfAbsent(receipt.getPayer(), uuid -> new IntArray()).add(size);
+            for (UUID receiver : receipt.getReceiver()) {
+                var positions = byReceiver.computeIfAbsent(receiver, uuid -> new IntArray());
+                if (positions.size == 0 || positions.data[positions.size - 1] != size) {
+                    positions.add(size);
+                }
+            }
+            size++;
+        }
+
+        long offsetOf(long receiptId) {
+            return offsetsById.get(receiptId);
+        }
+
+        /**
+         * offsets of entries involving the account within the time range, newest first.
+         */
+        long[] offsetsOf(UUID vault, long fromMillis, long toMillis) {
+            var paid = byPayer.getOrDefault(vault, IntArray.EMPTY);
+            var received = byReceiver.getOrDefault(vault, IntArray.EMPTY);
+            var result = new long[paid.size + received.size];
+            var count = 0;
+            int i = paid.size - 1, j = received.size - 1;
+            while (i >= 0 || j >= 0) {
+                int position;
+                if (j < 0 || (i >= 0 && paid.data[i] > received.data[j])) {
+                    position = paid.data[i--];
+                } else if (i < 0 || received.data[j] > paid.data[i]) {
+                    position = received.data[j--];
+                } else {
+                    position = paid.data[i--];
+                    j--;
+                }
+                if (timestamps[position] >= fromMillis && timestamps[position] <= toMillis) {
+                    result[count++] = offsets[position];
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+    }
+
+    /**
+     * Open-addressing map from receipt id to entry offset with linear probing, like {@link LedgerMap}.
+     */
+    private static final class IdMap {
+        private long[] keys = new long[64];
+        private long[] values = new long[64];
+        private boolean[] used = new boolean[64];
+        private int size = 0;
+
+        /**
+         * @return the offset, or -1 if absent
+         */
+        long get(long key) {
+            var index = indexOf(key);
+            return used[index] ? values[index] : -1;
+        }
+
+        void put(long key, long value) {
+            // keep the load factor at or below one half
+            if ((size + 1) * 2 > used.length) {
+                grow();
+            }
+            var index = indexOf(key);
+            if (!used[index]) {
+                used[index] = true;
+                keys[index] = key;
+                size++;
+            }
+            values[index] = value;
+        }
+
+        private int indexOf(long key) {
+            var mask = used.length - 1;
+            var hash = key * 0x9E3779B97F4A7C15L;
+            var index = (int) (hash ^ (hash >>> 32)) & mask;
+            while (used[index] && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void grow() {
+            var oldKeys = keys;
+            var oldValues = values;
+            var oldUsed = used;
+            keys = new long[oldUsed.length << 1];
+            values = new long[oldUsed.length << 1];
+            used = new boolean[oldUsed.length << 1];
+            for (int i = 0; i < oldUsed.length; i++) {
+                if (oldUsed[i]) {
+                    var index = indexOf(oldKeys[i]);
+                    used[index] = true;
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    private static final class IntArray {
+        static final IntArray EMPTY = new IntArray();
+        int[] data = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cat.nyaa.ecore;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ring of time buckets summing the count, volume and fees of transactions over the last <code>buckets</code>
+ * bucket durations.
+ * <p>A bucket is replaced by a fresh one by compare-and-set when time moves into a slot it held long ago, so
+ * recording never blocks. A recorder still holding the replaced bucket adds to a slot which has left the window.</p>
+ */
+class RollingWindow {
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> ring;
+
+    private static class Bucket {
+        private final long slot;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder volume = new DoubleAdder();
+        private final DoubleAdder fees = new DoubleAdder();
+
+        private Bucket(long slot) {
+            this.slot = slot;
+        }
+    }
+
+    record Totals(long count, double volume, double fees) {
+    }
+
+    RollingWindow(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        this.ring = new AtomicReferenceArray<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            ring.set(i, new Bucket(-1));
+        }
+    }
+
+    void record(long nowMillis, double volume, double fees) {
+        var slot = nowMillis / bucketMillis;
+        var index = (int) (slot % ring.length());
+        var bucket = ring.get(index);
+        while (bucket.slot < slot) {
+            var fresh = new Bucket(slot);
+            bucket = ring.compareAndSet(index, bucket, fresh) ? fresh : ring.get(index);
+        }
+        bucket.count.increment();
+        bucket.volume.add(volume);
+        bucket.fees.add(fees);
+    }
+
+    /**
+     * @return sums over every bucket within the window ending at <code>nowMillis</code>
+     */
+    Totals totals(long nowMillis) {
+        var slot = nowMillis / bucketMillis;
+        long count = 0;
+        double volume = 0;
+        double fees = 0;
+        for (int i = 0; i < ring.length(); i++) {
+            var bucket = ring.get(i);
+            if (bucket.slot > slot - ring.length() && bucket.slot <= slot) {
+                count += bucket.count.sum();
+                volume += bucket.volume.sum();
+                fees += bucket.fees.sum();
+            }
+        }
+        return new Totals(count, volume, fees);
+    }
+}
@@ -0,0 +1,63 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Space-Saving heavy hitter sketch, tracking at most <code>capacity</code> accounts by weight.
+ * <p>An untracked account takes over the counter with the smallest weight and inherits it as its error, so the
+ * weight of a tracked account is never underestimated, and every account weighing more than the total divided by
+ * the capacity is tracked.</p>
+ * <p>Finding the smallest counter is a linear scan, so it is only fed from the receipt dispatcher thread, never from
+ * a transaction.</p>
+ */
+class SpaceSaving {
+    private final int capacity;
+    private final Map<UUID, Counter> counters;
+
+    private static class Counter {
+        private double weight;
+        private double error;
+
+        private Counter(double weight, double error) {
+            this.weight = weight;
+            this.error = error;
+        }
+    }
+
+    SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>(this.capacity * 2);
+    }
+
+    synchronized void add(UUID vault, double weight) {
+        var counter = counters.get(vault);
+        if (counter != null) {
+            counter.weight += weight;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(vault, new Counter(weight, 0));
+            return;
+        }
+        Map.Entry<UUID, Counter> smallest = null;
+        for (var entry : counters.entrySet()) {
+            if (smallest == null || entry.getValue().weight < smallest.getValue().weight) {
+                smallest = entry;
+            }
+        }
+        var evicted = counters.remove(smallest.getKey());
+        counters.put(vault, new Counter(evicted.weight + weight, evicted.weight));
+    }
+
+    synchronized List<HeavyHitter> top(int limit) {
+        var hitters = new ArrayList<HeavyHitter>(counters.size());
+        counters.forEach((vault, counter) -> hitters.add(new HeavyHitter(vault, counter.weight, counter.error)));
+        hitters.sort(Comparator.comparingDouble(HeavyHitter::volume).reversed());
+        return hitters.size() > limit ? new ArrayList<>(hitters.subList(0, Math.max(0, limit))) : hitters;
+    }
+}
@@ -10,6 +10,8 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class SpigotLoader extends JavaPlugin {
@@ -17,6 +19,10 @@ public class SpigotLoader extends JavaPlugin {
     private Economy economyProvided = null;
     private Config config;
     private EconomyCoreProvider eCoreProvider = null;
+    private AsyncEconomyCoreProvider asyncECoreProvider = null;
+    private TickBudgetScheduler transactionScheduler = null;
+    private LedgerEconomy ledger = null;
+    private JdbcLedgerStore jdbcStore = null;
 
     @Override
     public void onEnable() {
@@ -49,6 +55,26 @@ public class SpigotLoader extends JavaPlugin {
         }
         logger.info("Config loaded.");
 
+        var useJdbc = config.vault.type.equals("jdbc") || (config.ledger.enabled && config.ledger.backend.equals("jdbc"));
+        if (useJdbc && !setupJdbcStore()) {
+            logger.severe("Failed to connect to the jdbc ledger database, disabling plugin.");
+            this.getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        if (config.ledger.enabled && !setupLedger()) {
+            logger.severe("Failed to load ecore ledger, disabling plugin.");
+            this.getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        var ecoreCommand = getCommand("ecore");
+        if (ecoreCommand != null) {
+            var executor = new EcoreCommand(() -> eCoreProvider);
+            ecoreCommand.setExecutor(executor);
+            ecoreCommand.setTabCompleter(executor);
+        }
+
         if (!setupEconomy()) {
             logger.warning("Vault or economy provider(implementation of vault api) not found, keep trying...");
             this.getServer().getPluginManager().registerEvents(new PluginEnableListener(this), this);
@@ -69,10 +95,66 @@ public class SpigotLoader extends JavaPlugin {
 
     }
 
+    protected boolean setupJdbcStore() {
+        var url = config.jdbc.url.isEmpty() ? "jdbc:sqlite:" + new File(getDataFolder(), "ecore_ledger.db").getAbsolutePath() : config.jdbc.url;
+        try {
+            if (!config.jdbc.driverClass.isEmpty()) {
+                Class.forName(config.jdbc.driverClass);
+            }
+            // SQLite takes one writer at a time, more connections would only fail each other with SQLITE_BUSY
+            var poolSize = url.startsWith("jdbc:sqlite:") ? 1 : config.jdbc.poolSize;
+            jdbcStore = new JdbcLedgerStore(new JdbcConnectionPool(url, config.jdbc.user, config.jdbc.password,
+                    poolSize, config.jdbc.connectionTimeoutInMillis), config.jdbc.table, config.jdbc.maxRetries,
+                    config.jdbc.groupCommitInMillis, logger);
+            jdbcStore.open();
+        } catch (ClassNotFoundException | SQLException | IllegalArgumentException e) {
+            e.printStackTrace();
+            if (jdbcStore != null) {
+                jdbcStore.close();
+                jdbcStore = null;
+            }
+            return false;
+        }
+        logger.info("Connected to jdbc ledger database.");
+        return true;
+    }
+
+    protected boolean setupLedger() {
+        if (config.ledger.backend.equals("jdbc")) {
+            ledger = new JdbcLedger(jdbcStore, config.ledger.fractionalDigits, config.ledger.startingBalance,
+                    config.ledger.currencyNameSingular, config.ledger.currencyNamePlural, logger);
+        } else {
+            ledger = new NativeLedger(getDataFolder(), config.ledger.fractionalDigits, config.ledger.startingBalance,
+                    config.ledger.currencyNameSingular, config.ledger.currencyNamePlural, config.ledger.journalGroupCommitInMillis, logger);
+        }
+        try {
+            ledger.open();
+        } catch (IOException e) {
+            e.printStackTrace();
+            ledger = null;
+            return false;
+        }
+        var autoSaveInterval = 20 * config.ledger.autoSaveIntervalInSeconds;
+        this.getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+            try {
+                ledger.save();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, autoSaveInterval, autoSaveInterval);
+        this.getServer().getServicesManager().register(Economy.class, ledger, this, ServicePriority.High);
+        logger.info("Registered ecore ledger as economy provider.");
+        return true;
+    }
+
     protected boolean setupEconomy() {
         if (getServer().getPluginManager().getPlugin("Vault") == null) {
             return false;
         }
+        if (ledger != null) {
+            economyProvided = ledger;
+            return true;
+        }
         // ';[cvfp[000000000000000000000000000000000000000'
         // By Companion Object -- The cat
         RegisteredServiceProvider<Economy> economyRegisteredServiceProvider = getServer().getServicesManager().getRegistration(Economy.class);
@@ -91,20 +173,43 @@ public class SpigotLoader extends JavaPlugin {
 
         // create ecore instance & register instance as a service provider to service manager
         try {
-            eCoreProvider = new EconomyCoreProvider(config, economyProvided, this);
+            eCoreProvider = new EconomyCoreProvider(config, economyProvided, this, jdbcStore);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
 
+        asyncECoreProvider = new AsyncEconomyCoreProvider(eCoreProvider, config.async.workerThreads);
+        transactionScheduler = new TickBudgetScheduler(eCoreProvider, eCoreProvider.getMetrics(),
+                TimeUnit.MILLISECONDS.toNanos(config.scheduler.tickBudgetInMillis), config.scheduler.maxQueuedTransactions);
+        this.getServer().getScheduler().runTaskTimer(this, transactionScheduler::tick, 1, 1);
+
         this.getServer().getServicesManager().register(EconomyCore.class, eCoreProvider, this, ServicePriority.Normal);
+        this.getServer().getServicesManager().register(AsyncEconomyCore.class, asyncECoreProvider, this, ServicePriority.Normal);
+        this.getServer().getServicesManager().register(TransactionScheduler.class, transactionScheduler, this, ServicePriority.Normal);
         return true;
     }
 
     @Override
     public void onDisable() {
+        if (transactionScheduler != null) {
+            transactionScheduler.shutdown();
+        }
+        if (asyncECoreProvider != null) {
+            asyncECoreProvider.onDisable(config.async.shutdownTimeoutInMillis);
+        }
         if (eCoreProvider != null) {
             eCoreProvider.onDisable();
         }
+        if (ledger != null) {
+            try {
+                ledger.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (jdbcStore != null) {
+            jdbcStore.close();
+        }
     }
 }
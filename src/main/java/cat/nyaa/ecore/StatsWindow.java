@@ -0,0 +1,8 @@
+package cat.nyaa.ecore;
+
+/**
+ * Rolling time window of the {@link EconomyStats}, always ending now.
+ */
+public enum StatsWindow {
+    MINUTE, HOUR, DAY
+}
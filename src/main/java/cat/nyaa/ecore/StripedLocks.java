@@ -0,0 +1,93 @@
+package cat.nyaa.ecore;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed table of reentrant locks, every account maps to the stripe selected by the hash of its UUID.
+ * <p>A set of accounts is locked in ascending stripe order, each stripe once, so threads locking overlapping
+ * sets of accounts can never deadlock, while accounts on different stripes stay fully parallel.</p>
+ */
+class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final Held[] unlockers;
+    private final int mask;
+
+    @FunctionalInterface
+    interface Held {
+        void unlock();
+    }
+
+    StripedLocks(int stripes) {
+        var size = 1;
+        while (size < stripes && size < (1 << 16)) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        this.unlockers = new Held[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+            this.unlockers[i] = this.stripes[i]::unlock;
+        }
+        this.mask = size - 1;
+    }
+
+    private int stripeOf(UUID account) {
+        var hash = account.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    Held lock(UUID account) {
+        var stripe = stripeOf(account);
+        stripes[stripe].lock();
+        return unlockers[stripe];
+    }
+
+    /**
+     * lock two accounts without allocating, undone by {@link #unlockPair(UUID, UUID)} with the same accounts.
+     */
+    void lockPair(UUID account, UUID other) {
+        var first = stripeOf(account);
+        var second = stripeOf(other);
+        stripes[Math.min(first, second)].lock();
+        if (first != second) {
+            stripes[Math.max(first, second)].lock();
+        }
+    }
+
+    void unlockPair(UUID account, UUID other) {
+        var first = stripeOf(account);
+        var second = stripeOf(other);
+        if (first != second) {
+            stripes[Math.max(first, second)].unlock();
+        }
+        stripes[Math.min(first, second)].unlock();
+    }
+
+    Held lock(UUID account, Collection<UUID> others) {
+        var indexes = new int[others.size() + 1];
+        var count = 0;
+        indexes[count++] = stripeOf(account);
+        for (var other : others) {
+            indexes[count++] = stripeOf(other);
+        }
+        Arrays.sort(indexes);
+        var distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        for (int i = 0; i < distinct; i++) {
+            stripes[indexes[i]].lock();
+        }
+        var lockedCount = distinct;
+        return () -> {
+            for (int i = lockedCount - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * {@link TransactionScheduler} drained by {@link #tick()}, which the plugin runs on the main thread every tick.
+ * <p>There is one lock-free queue per priority. A tick always runs at least one transaction, so a single slow one
+ * delays the next tick by at most its own duration, and the queue keeps moving however small the budget.</p>
+ */
+class TickBudgetScheduler implements TransactionScheduler {
+    private static final TransactionPriority[] PRIORITIES = TransactionPriority.values();
+
+    private final EconomyCore core;
+    private final EconomyMetrics metrics;
+    private final long budgetNanos;
+    private final int maxQueued;
+    private final List<Queue<Task<?>>> queues = new ArrayList<>(PRIORITIES.length);
+    private final AtomicIntegerArray depths = new AtomicIntegerArray(PRIORITIES.length);
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    private record Task<T>(Function<EconomyCore, T> transaction, CompletableFuture<T> result, long queuedAt) {
+        void run(EconomyCore core) {
+            try {
+                result.complete(transaction.apply(core));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+
+    TickBudgetScheduler(EconomyCore core, EconomyMetrics metrics, long budgetNanos, int maxQueued) {
+        this.core = core;
+        this.metrics = metrics;
+        this.budgetNanos = budgetNanos;
+        this.maxQueued = maxQueued;
+        for (var priority : PRIORITIES) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            metrics.gauge("scheduler_queue_depth_" + priority.name().toLowerCase(Locale.ROOT), () -> getQueueDepth(priority));
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(TransactionPriority priority, Function<EconomyCore, T> transaction) {
+        var result = new CompletableFuture<T>();
+        if (closed) {
+            result.completeExceptionally(new RejectedExecutionException("ECore transaction scheduler is shut down."));
+            return result;
+        }
+        if (depth.incrementAndGet() > maxQueued) {
+            depth.decrementAndGet();
+            metrics.increment("scheduler_rejected");
+            result.completeExceptionally(new RejectedExecutionException("ECore transaction scheduler queue is full."));
+            return result;
+        }
+        depths.incrementAndGet(priority.ordinal());
+        var queue = queues.get(priority.ordinal());
+        var task = new Task<>(transaction, result, metrics.start());
+        queue.add(task);
+        // a shutdown which drained the queue before the task was added would never run it; if the task is still
+        // there take it back, otherwise the drain has it
+        if (closed && queue.remove(task)) {
+            depths.decrementAndGet(priority.ordinal());
+            depth.decrementAndGet();
+            result.completeExceptionally(new RejectedExecutionException("ECore transaction scheduler is shut down."));
+        }
+        return result;
+    }
+
+    /**
+     * run queued transactions, highest priority first, until the tick budget is spent.
+     */
+    void tick() {
+        if (depth.get() == 0) {
+            return;
+        }
+        var start = System.nanoTime();
+        var deadline = start + budgetNanos;
+        var ran = false;
+        for (int i = 0; i < queues.size(); i++) {
+            Task<?> task;
+            while ((!ran || System.nanoTime() < deadline) && (task = queues.get(i).poll()) != null) {
+                depths.decrementAndGet(i);
+                depth.decrementAndGet();
+                metrics.record(EconomyMetrics.Operation.SCHEDULER_QUEUE_WAIT, task.queuedAt());
+                task.run(core);
+                ran = true;
+            }
+        }
+        metrics.record(EconomyMetrics.Operation.SCHEDULER_TICK, start);
+    }
+
+    /**
+     * stop accepting transactions, then run every queued one regardless of the budget.
+     */
+    void shutdown() {
+        closed = true;
+        for (int i = 0; i < queues.size(); i++) {
+            Task<?> task;
+            while ((task = queues.get(i).poll()) != null) {
+                depths.decrementAndGet(i);
+                depth.decrementAndGet();
+                task.run(core);
+            }
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    @Override
+    public int getQueueDepth(TransactionPriority priority) {
+        return depths.get(priority.ordinal());
+    }
+}
@@ -0,0 +1,113 @@
+package cat.nyaa.ecore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limiter with one bucket per key, e.g. per account or per plugin.
+ * <p>A bucket is a single <code>long</code> packing the time of its last refill in milliseconds (upper 40 bits) and
+ * its tokens in thousandths (lower 24 bits), updated by compare-and-set, so acquiring never blocks. A bucket idle for
+ * longer than the eviction time is full again anyway and is dropped by {@link #evictIdle()}.</p>
+ */
+class TokenBuckets<K> {
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE_TOKEN = 1000;
+
+    private final ConcurrentHashMap<K, Bucket> buckets = new ConcurrentHashMap<>();
+    private final long epochMillis = System.currentTimeMillis();
+    // thousandths of a token per millisecond equal tokens per second
+    private final double refillPerMillis;
+    private final long capacity;
+    private final long idleEvictionMillis;
+    private final LongAdder limited = new LongAdder();
+
+    private static class Bucket extends AtomicLong {
+        private final AtomicLong limited = new AtomicLong();
+
+        Bucket(long state) {
+            super(state);
+        }
+    }
+
+    /**
+     * @param permitsPerSecond sustained rate, a bucket refills this many tokens per second
+     * @param burst            capacity of a bucket, at most 16000 tokens
+     */
+    TokenBuckets(double permitsPerSecond, double burst, long idleEvictionMillis) {
+        this.refillPerMillis = permitsPerSecond;
+        this.capacity = Math.max(ONE_TOKEN, Math.min(TOKEN_MASK, Math.round(burst * ONE_TOKEN)));
+        // never evict a bucket before it could have refilled completely
+        this.idleEvictionMillis = Math.max(idleEvictionMillis, (long) Math.ceil(capacity / Math.max(refillPerMillis, 1e-3)));
+    }
+
+    /**
+     * take one token from the bucket of a key.
+     *
+     * @return false if the bucket is empty
+     */
+    boolean tryAcquire(K key) {
+        var now = System.currentTimeMillis() - epochMillis;
+        var bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity));
+        }
+        while (true) {
+            var state = bucket.get();
+            var last = state >>> TOKEN_BITS;
+            var tokens = state & TOKEN_MASK;
+            var refill = (long) ((now - last) * refillPerMillis);
+            if (refill > 0) {
+                tokens = Math.min(capacity, tokens + refill);
+                last = now;
+            }
+            if (tokens < ONE_TOKEN) {
+                bucket.limited.incrementAndGet();
+                limited.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(state, last << TOKEN_BITS | (tokens - ONE_TOKEN))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * drop every bucket which has been idle for longer than the eviction time.
+     */
+    void evictIdle() {
+        var now = System.currentTimeMillis() - epochMillis;
+        buckets.values().removeIf(bucket -> now - (bucket.get() >>> TOKEN_BITS) > idleEvictionMillis);
+    }
+
+    /**
+     * @return requests rejected since creation, including those of evicted buckets
+     */
+    long getLimited() {
+        return limited.sum();
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * @return up to <code>limit</code> live keys with the most rejected requests, most rejected first
+     */
+    List<Map.Entry<K, Long>> topLimited(int limit) {
+        var entries = new ArrayList<Map.Entry<K, Long>>();
+        buckets.forEach((key, bucket) -> {
+            var count = bucket.limited.get();
+            if (count > 0) {
+                entries.add(Map.entry(key, count));
+            }
+        });
+        entries.sort(Map.Entry.<K, Long>comparingByValue(Comparator.reverseOrder()));
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+}
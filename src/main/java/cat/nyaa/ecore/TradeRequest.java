@@ -0,0 +1,19 @@
+package cat.nyaa.ecore;
+
+import java.util.UUID;
+
+/**
+ * one trade or transfer of a batch settled by {@link EconomyCore#playerTradeBatch(java.util.List)}.
+ *
+ * @param payer                the player who pays
+ * @param receiver             the player who receives
+ * @param amount               the amount paid
+ * @param feeRate              fee rate in <code>double</code>, e.g. {@link EconomyCore#getTradeFeeRate()} for a trade
+ *                             or {@link EconomyCore#getTransferFeeRate()} for a transfer
+ * @param serviceFeePreference who pays the service fee
+ */
+public record TradeRequest(UUID payer, UUID receiver, double amount, double feeRate, ServiceFeePreference serviceFeePreference) {
+    public TradeRequest(UUID payer, UUID receiver, double amount, double feeRate) {
+        this(payer, receiver, amount, feeRate, ServiceFeePreference.INTERNAL);
+    }
+}
@@ -0,0 +1,150 @@
+package cat.nyaa.ecore;
+
+import org.bukkit.Bukkit;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes transactions to bukkit listeners of {@link PreTransactionEvent} and {@link PostTransactionEvent}, and to
+ * registered {@link ReceiptListener}s.
+ * <p>An event nobody listens to is not even created. Receipts for receipt listeners are only put into a bounded
+ * lock-free {@link RingBuffer}; a background dispatcher drains it and hands each batch to every listener, so a slow
+ * listener delays other listeners but never a transaction. When the buffer is full, receipts are dropped and
+ * counted. An idle dispatcher parks until a receipt arrives.</p>
+ */
+class TransactionEvents implements Closeable {
+    private final RingBuffer<Receipt> buffer;
+    private final int maxBatchSize;
+    private final Logger logger;
+    private final CopyOnWriteArrayList<ReceiptListener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder dropped = new LongAdder();
+    private volatile Thread dispatcher = null;
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+
+    TransactionEvents(int bufferCapacity, int maxBatchSize, Logger logger) {
+        this.buffer = new RingBuffer<>(bufferCapacity);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.logger = logger;
+    }
+
+    /**
+     * @return false if a listener cancelled the transaction
+     */
+    boolean firePre(UUID payer, List<UUID> receivers, double amount, double feeRate, ServiceFeePreference serviceFeePreference) {
+        if (PreTransactionEvent.getHandlerList().getRegisteredListeners().length == 0) {
+            return true;
+        }
+        var event = new PreTransactionEvent(payer, receivers, amount, feeRate, serviceFeePreference, !Bukkit.isPrimaryThread());
+        Bukkit.getPluginManager().callEvent(event);
+        return !event.isCancelled();
+    }
+
+    /**
+     * like {@link #firePre(UUID, List, double, double, ServiceFeePreference)} for a single receiver, allocating
+     * nothing unless there is a listener.
+     */
+    boolean firePre(UUID payer, UUID receiver, double amount, double feeRate, ServiceFeePreference serviceFeePreference) {
+        return PreTransactionEvent.getHandlerList().getRegisteredListeners().length == 0
+                || firePre(payer, List.of(receiver), amount, feeRate, serviceFeePreference);
+    }
+
+    /**
+     * publish a finished transaction, ignored unless it succeeded.
+     */
+    void firePost(TransactionResult result) {
+        if (!result.isSuccess()) {
+            return;
+        }
+        var receipt = result.getReceipt();
+        if (!listeners.isEmpty() && !closed) {
+            if (!buffer.offer(receipt)) {
+                dropped.increment();
+            } else if (parked) {
+                LockSupport.unpark(dispatcher);
+            }
+        }
+        if (PostTransactionEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            Bukkit.getPluginManager().callEvent(new PostTransactionEvent(receipt, !Bukkit.isPrimaryThread()));
+        }
+    }
+
+    synchronized void register(ReceiptListener listener) {
+        listeners.addIfAbsent(listener);
+        if (dispatcher == null && !closed) {
+            dispatcher = new Thread(this::runDispatcher, "ECore-Receipt-Dispatch");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    void unregister(ReceiptListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return number of receipts dropped because receipt listeners fell behind
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void runDispatcher() {
+        var batch = new ArrayList<Receipt>(maxBatchSize);
+        var view = Collections.unmodifiableList(batch);
+        while (true) {
+            Receipt receipt;
+            while (batch.size() < maxBatchSize && (receipt = buffer.poll()) != null) {
+                batch.add(receipt);
+            }
+            if (batch.isEmpty()) {
+                if (closed) {
+                    break;
+                }
+                // raise the flag before looking at the buffer again, so a receipt offered in between either is seen
+                // here or sees the flag and unparks
+                parked = true;
+                if (buffer.size() == 0 && !closed) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            for (var listener : listeners) {
+                try {
+                    listener.onReceipts(view);
+                } catch (Throwable e) {
+                    logger.log(Level.WARNING, "Receipt listener " + listener + " threw", e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = dispatcher;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package cat.nyaa.ecore;
+
+/**
+ * Priority of a transaction submitted to the {@link TransactionScheduler}.
+ * <p>Queued transactions run highest priority first, SYSTEM being the highest, and in submission order within
+ * the same priority.</p>
+ */
+public enum TransactionPriority {
+    SYSTEM, HIGH, NORMAL, LOW
+}
@@ -0,0 +1,47 @@
+package cat.nyaa.ecore;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Queue of transactions run on the main thread within a time budget per tick.
+ * <p>Registered as a service next to {@link EconomyCore}, for upstream economy plugins which must only be called
+ * from the main thread:</p>
+ * <pre>
+ *      TransactionScheduler scheduler = Bukkit.getServicesManager().getRegistration(TransactionScheduler.class).getProvider();
+ *      scheduler.submit(TransactionPriority.NORMAL, core -&gt; core.playerTrade(consumer, merchant, price)).thenAccept(result -&gt; { ... });
+ * </pre>
+ *
+ * <p>Every tick, queued transactions are run until the tick budget is spent, and the rest is carried over to the
+ * next tick. Submit a large payout or a tax sweep as many small transactions so it can be spread across ticks.
+ * Futures complete on the main thread.</p>
+ */
+public interface TransactionScheduler {
+    /**
+     * queue a transaction.
+     *
+     * @param priority    the priority of the transaction
+     * @param transaction the transaction, given the economy core to act on
+     * @return the result of the transaction, completed exceptionally if it threw or the queue is full or shut down
+     */
+    <T> CompletableFuture<T> submit(TransactionPriority priority, Function<EconomyCore, T> transaction);
+
+    /**
+     * queue a transaction with {@link TransactionPriority#NORMAL} priority.
+     *
+     * @see #submit(TransactionPriority, Function)
+     */
+    default <T> CompletableFuture<T> submit(Function<EconomyCore, T> transaction) {
+        return submit(TransactionPriority.NORMAL, transaction);
+    }
+
+    /**
+     * @return the number of queued transactions of every priority
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the number of queued transactions of a priority
+     */
+    int getQueueDepth(TransactionPriority priority);
+}
@@ -4,5 +4,8 @@ public enum TransactionStatus {
     SUCCESS,
     INSUFFICIENT_BALANCE,
     UPSTREAM_FAILURE,
-    UNKNOWN_ERROR
+    UNKNOWN_ERROR,
+    HOLD_NOT_FOUND,
+    RATE_LIMITED,
+    CANCELLED
 }
\ No newline at end of file
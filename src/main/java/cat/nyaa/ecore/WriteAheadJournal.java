@@ -0,0 +1,320 @@
+package cat.nyaa.ecore;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only binary journal of fixed-size records.
+ * <p>Each record is <code>crc32c:int | type:byte | seq:long | time:long | a:long | b:long | c:long</code>.
+ * Records are written through to the file on append, so they survive a crash of the server process, and are
+ * fsync-ed by a background group commit every few milliseconds. A torn or corrupted record is detected by its
+ * checksum on {@link #open(long, Replayer)} and skipped, a torn tail is overwritten by the next append.</p>
+ *
+ * <p>Appends do not serialize on each other: a record reserves its sequence number, and with it the position it is
+ * written at, from an atomic counter and is written with a positional write. They share a read lock, which
+ * {@link #snapshot(LongSupplier)}, {@link #compact(long)} and {@link #close()} take exclusively. Concurrent appends
+ * may reach the file out of order, so a crash can leave a hole before a complete record; the hole is skipped on
+ * open. Callers that need their records replayed in the order they applied them must order the appends
+ * themselves.</p>
+ *
+ * <p>A snapshot of the journaled state is taken with {@link #snapshot(LongSupplier)}, after which
+ * {@link #compact(long)} drops every record the snapshot already covers.</p>
+ */
+class WriteAheadJournal implements Closeable {
+    static final int RECORD_SIZE = 4 + 1 + 8 * 5;
+
+    private final Path path;
+    private final Logger logger;
+    private final long groupCommitMillis;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    private ScheduledExecutorService committer = null;
+    private volatile FileChannel channel = null;
+    // record baseSeq is written at basePosition, every later one right behind its predecessor; changed under the write lock
+    private long basePosition = 0;
+    private long baseSeq = 1;
+    private volatile boolean dirty = false;
+
+    private static final class Encoder {
+        final byte[] record = new byte[RECORD_SIZE];
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final CRC32C crc = new CRC32C();
+
+        ByteBuffer encode(byte type, long seq, long a, long b, long c) {
+            buffer.clear();
+            buffer.putInt(0).put(type).putLong(seq).putLong(System.currentTimeMillis()).putLong(a).putLong(b).putLong(c);
+            buffer.putInt(0, checksum());
+            return buffer.flip();
+        }
+
+        int checksum() {
+            crc.reset();
+            crc.update(record, 4, RECORD_SIZE - 4);
+            return (int) crc.getValue();
+        }
+    }
+
+    @FunctionalInterface
+    interface Replayer {
+        void replay(byte type, long seq, long a, long b, long c);
+    }
+
+    record Snapshot(long seq, long state) {
+    }
+
+    WriteAheadJournal(File file, long groupCommitMillis, Logger logger) {
+        this.path = file.toPath();
+        this.groupCommitMillis = Math.max(1, groupCommitMillis);
+        this.logger = logger;
+    }
+
+    /**
+     * replay every valid record newer than a snapshot, then open the journal for appending right after the last one.
+     *
+     * @param snapshotSeq sequence number covered by the latest snapshot, 0 if none
+     * @return the sequence number of the last valid record, or <code>snapshotSeq</code> if there is none newer
+     */
+    long open(long snapshotSeq, Replayer replayer) throws IOException {
+        lock.writeLock().lock();
+        try {
+            var decoder = new Encoder();
+            var record = decoder.record;
+            var lastSeq = 0L;
+            var validLength = 0L;
+            var skipped = 0;
+            if (Files.exists(path)) {
+                try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    for (var offset = 0L; ; offset += RECORD_SIZE) {
+                        try {
+                            input.readFully(record);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        var buffer = ByteBuffer.wrap(record);
+                        var type = buffer.get(4);
+                        var seq = buffer.getLong(5);
+                        if (buffer.getInt(0) != decoder.checksum() || type == 0 || seq <= lastSeq) {
+                            // a record torn by a crash, possibly with complete ones written after it
+                            skipped++;
+                            continue;
+                        }
+                        if (seq > snapshotSeq) {
+                            replayer.replay(type, seq, buffer.getLong(21), buffer.getLong(29), buffer.getLong(37));
+                        }
+                        lastSeq = seq;
+                        validLength = offset + RECORD_SIZE;
+                    }
+                }
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() > validLength) {
+                logger.warning("Discarded " + (channel.size() - validLength) + " bytes of torn or corrupted journal tail in " + path.getFileName() + ".");
+                channel.truncate(validLength);
+            }
+            if (skipped > 0) {
+                logger.warning("Skipped " + skipped + " torn or corrupted journal records in " + path.getFileName() + ".");
+            }
+            nextSeq.set(Math.max(lastSeq, snapshotSeq) + 1);
+            basePosition = validLength;
+            baseSeq = nextSeq.get();
+
+            committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "ECore-Journal-" + path.getFileName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(this::groupCommit, groupCommitMillis, groupCommitMillis, TimeUnit.MILLISECONDS);
+            return nextSeq.get() - 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * append a record.
+     *
+     * @return the sequence number of the record
+     */
+    long append(byte type, long a, long b, long c) {
+        lock.readLock().lock();
+        try {
+            return write(type, a, b, c);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * run a mutation and, if it succeeded, journal it, atomically with respect to {@link #snapshot(LongSupplier)}.
+     * <p>A mutation which could not be journaled has still been applied, so it is reported as successful and only
+     * logged; the next snapshot covers it.</p>
+     */
+    boolean appendIf(BooleanSupplier mutation, byte type, long a, long b, long c) {
+        lock.readLock().lock();
+        try {
+            if (!mutation.getAsBoolean()) {
+                return false;
+            }
+            try {
+                write(type, a, b, c);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Applied a change which could not be journaled, it is lost on a crash before the next snapshot", e);
+            }
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long write(byte type, long a, long b, long c) {
+        var seq = nextSeq.getAndIncrement();
+        var position = basePosition + (seq - baseSeq) * RECORD_SIZE;
+        var buffer = encoders.get().encode(type, seq, a, b, c);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            // the slot stays torn and is skipped on open
+            throw new RuntimeException("Failed to append to journal " + path.getFileName(), e);
+        }
+        dirty = true;
+        return seq;
+    }
+
+    /**
+     * capture the journaled state together with the sequence number of the last record it includes.
+     */
+    Snapshot snapshot(LongSupplier state) {
+        lock.writeLock().lock();
+        try {
+            return new Snapshot(nextSeq.get() - 1, state.getAsLong());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the sequence number of the last reserved record, 0 if none
+     */
+    long lastSeq() {
+        return nextSeq.get() - 1;
+    }
+
+    /**
+     * drop every record with a sequence number not greater than <code>seq</code>, which a snapshot now covers.
+     */
+    void compact(long seq) throws IOException {
+        lock.writeLock().lock();
+        try {
+            var position = basePosition + (nextSeq.get() - baseSeq) * RECORD_SIZE;
+            var keepFrom = 0L;
+            var buffer = ByteBuffer.allocate(RECORD_SIZE);
+            while (keepFrom < position) {
+                buffer.clear();
+                channel.read(buffer, keepFrom);
+                if (buffer.getLong(5) > seq) {
+                    break;
+                }
+                keepFrom += RECORD_SIZE;
+            }
+            if (keepFrom == 0) {
+                return;
+            }
+            if (keepFrom == position) {
+                channel.truncate(0);
+                channel.force(true);
+                rebase(0);
+                return;
+            }
+
+            var temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (var out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                // transferTo may move fewer bytes than asked
+                var length = position - keepFrom;
+                var transferred = 0L;
+                while (transferred < length) {
+                    var count = channel.transferTo(keepFrom + transferred, length - transferred, out);
+                    if (count <= 0) {
+                        throw new IOException("Journal " + path.getFileName() + " ended before " + position + " while compacting.");
+                    }
+                    transferred += count;
+                }
+                out.force(true);
+            }
+            channel.force(true);
+            channel.close();
+            var compactedPosition = position;
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                DurableFiles.forceDirectory(path);
+                compactedPosition -= keepFrom;
+            } finally {
+                // if the move failed the old journal is still in place, keep appending to it
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                rebase(compactedPosition);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void rebase(long position) {
+        basePosition = position;
+        baseSeq = nextSeq.get();
+        dirty = false;
+    }
+
+    private void groupCommit() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        var toForce = channel;
+        try {
+            toForce.force(false);
+        } catch (IOException e) {
+            // the channel may have been swapped by compaction, which forces by itself
+            if (toForce.isOpen()) {
+                logger.log(Level.WARNING, "Failed to sync journal " + path.getFileName(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (committer != null) {
+                committer.shutdown();
+            }
+            if (channel != null && channel.isOpen()) {
+                channel.force(true);
+                channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package cat.nyaa.ecore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * runs {@link JdbcLedgerStore} against an embedded H2 database, with two stores standing for two servers sharing it.
+ */
+class JdbcLedgerStoreTest {
+    private static final Logger LOGGER = Logger.getLogger(JdbcLedgerStoreTest.class.getName());
+    private static final int ACCOUNTS = 16;
+    private static final long INITIAL_BALANCE = 10_000;
+    private static final UUID SYSTEM_ACCOUNT = new UUID(0, 0);
+
+    private String url;
+    private JdbcLedgerStore first;
+    private JdbcLedgerStore second;
+    private ExecutorService workers;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        url = "jdbc:h2:mem:ledger-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+        first = open();
+        second = open();
+        workers = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.shutdownNow();
+        first.close();
+        second.close();
+    }
+
+    private JdbcLedgerStore open() throws SQLException {
+        var store = new JdbcLedgerStore(new JdbcConnectionPool(url, "", "", 4, 10_000), "ecore_ledger", 1000, 5, LOGGER);
+        store.open();
+        return store;
+    }
+
+    @Test
+    void concurrentTransfersConserveMoney() throws Exception {
+        var accounts = new UUID[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = UUID.randomUUID();
+            assertTrue(first.create(accounts[i], INITIAL_BALANCE));
+        }
+
+        var tasks = new ArrayList<Future<?>>();
+        for (int worker = 0; worker < 8; worker++) {
+            var store = worker % 2 == 0 ? first : second;
+            tasks.add(workers.submit(() -> {
+                var random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    var from = accounts[random.nextInt(ACCOUNTS)];
+                    var to = accounts[random.nextInt(ACCOUNTS)];
+                    var amount = 1 + random.nextInt(3000);
+                    var fee = amount / 10;
+                    if (store.change(from, -amount, 0) == null) {
+                        continue;
+                    }
+                    store.depositLater(SYSTEM_ACCOUNT, fee);
+                    store.change(to, amount - fee, 0);
+                }
+                return null;
+            }));
+        }
+        for (var task : tasks) {
+            task.get();
+        }
+        first.flush();
+        second.flush();
+
+        try (var connection = DriverManager.getConnection(url);
+             var statement = connection.createStatement();
+             var result = statement.executeQuery("SELECT SUM(balance), MIN(balance) FROM ecore_ledger")) {
+            assertTrue(result.next());
+            assertEquals(ACCOUNTS * INITIAL_BALANCE, result.getLong(1));
+            assertTrue(result.getLong(2) >= 0);
+        }
+        assertEquals(first.balance(SYSTEM_ACCOUNT, 0), second.balance(SYSTEM_ACCOUNT, 0));
+    }
+
+    @Test
+    void withdrawalNeverOverdraws() throws Exception {
+        var account = UUID.randomUUID();
+        first.create(account, 1000);
+        var tasks = new ArrayList<Future<Long>>();
+        for (int i = 0; i < 20; i++) {
+            var store = i % 2 == 0 ? first : second;
+            tasks.add(workers.submit(() -> store.change(account, -100, 0)));
+        }
+        var succeeded = 0;
+        for (var task : tasks) {
+            if (task.get() != null) {
+                succeeded++;
+            }
+        }
+        assertEquals(10, succeeded);
+        assertEquals(0, first.balance(account, 0));
+    }
+
+    @Test
+    void unreadableBalanceIsNotReportedAsZero() {
+        var ledger = new JdbcLedger(first, 2, 0, "coin", "coins", LOGGER);
+        first.close();
+        assertThrows(IllegalStateException.class, () -> ledger.balanceOf(UUID.randomUUID()));
+    }
+}